@@ -0,0 +1,96 @@
+package eventbus;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of {@link EventBus#post(String, Object, boolean)} in sync and async mode, and of
+ * sync posts through the per-thread queued and immediate dispatchers.
+ * <p>Sync posts to existing subscribers must not allocate: both sync benchmarks are expected to
+ * report a {@code gc.alloc.rate.norm} of about 0 B/op under {@link BenchmarkRunner}.
+ *
+ * @author wuyongkang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PostBenchmark {
+    private static final String SUBJECT = "benchmark.post";
+
+    @Param({"1", "10", "100"})
+    int subscribers;
+
+    private EventBusImpl perThreadBus;
+    private EventBusImpl immediateBus;
+    private EventBusImpl asyncBus;
+    private ExecutorService asyncExecutor;
+    private final Event event = new Event();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        asyncExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        perThreadBus = new EventBusImpl("per-thread", MoreExecutors.directExecutor(),
+                AbstractDispatcher.perThreadDispatchQueue(), EventBusImpl.LoggingHandler.INSTANCE);
+        immediateBus = new EventBusImpl("immediate", MoreExecutors.directExecutor(),
+                AbstractDispatcher.immediate(), EventBusImpl.LoggingHandler.INSTANCE);
+        asyncBus = new EventBusImpl("async", asyncExecutor);
+        for (int i = 0; i < subscribers; i++) {
+            perThreadBus.register(new Listener());
+            immediateBus.register(new Listener());
+            asyncBus.register(new Listener());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        asyncExecutor.shutdown();
+        asyncExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public void postSync() {
+        perThreadBus.post(SUBJECT, event, true);
+    }
+
+    @Benchmark
+    public void postSyncImmediate() {
+        immediateBus.post(SUBJECT, event, true);
+    }
+
+    @Benchmark
+    public void postAsync() {
+        asyncBus.post(SUBJECT, event, false);
+    }
+
+    public static class Event {
+    }
+
+    public static class Listener {
+        private long received;
+
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onEvent(Event event) {
+            received++;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link SubscriberRegistry#getSubscribers(String, Object)} by number of subscribers, for a
+ * flat event type and for an event with a deep class and interface hierarchy, plus the cost of
+ * register/unregister churn and of registering {@code subscribers} listeners one by one or in bulk.
+ * <p>The cold benchmarks register a listener whose classes were just loaded, so nothing is cached
+ * yet, once with the compile-time subscriber index visible and once with it hidden so the methods
+ * and the type hierarchy are found by reflection.
+ *
+ * @author wuyongkang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriberRegistryBenchmark {
+    private static final String SUBJECT = "benchmark.registry";
+    /**
+     * Classes each cold class loader defines afresh; nested classes must agree with their enclosing
+     * class, so it is copied too.
+     */
+    private static final Class<?>[] COLD_CLASSES = {
+            SubscriberRegistryBenchmark.class, ColdPrimer.class,
+            ColdMarker.class, ColdBase.class, ColdMiddle.class, ColdListener.class};
+    private static final String INDEX_SERVICE = "META-INF/services/" + SubscriberIndex.class.getName();
+
+    @Param({"1", "10", "100", "1000"})
+    int subscribers;
+
+    private EventBusImpl bus;
+    private SubscriberRegistry registry;
+    private final List<FlatListener> bulkListeners = new ArrayList<>();
+    private final FlatEvent flatEvent = new FlatEvent();
+    private final DeepEvent deepEvent = new DeepEvent();
+    private final FlatListener churnListener = new FlatListener();
+    private final Map<String, byte[]> coldBytecode = new HashMap<>();
+    private Object coldIndexedListener;
+    private Object coldReflectiveListener;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bus = new EventBusImpl(MoreExecutors.directExecutor());
+        registry = new SubscriberRegistry(bus);
+        for (int i = 0; i < subscribers; i++) {
+            registry.register(new FlatListener());
+            registry.register(new HierarchyListener());
+            bulkListeners.add(new FlatListener());
+        }
+        for (Class<?> clazz : COLD_CLASSES) {
+            try (InputStream in = clazz.getClassLoader().getResourceAsStream(clazz.getName().replace('.', '/') + ".class")) {
+                coldBytecode.put(clazz.getName(), ByteStreams.toByteArray(in));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        boolean indexed = false;
+        for (SubscriberIndex index : ServiceLoader.load(SubscriberIndex.class)) {
+            indexed |= index.supertypes(ColdListener.class.getName()) != null;
+        }
+        Preconditions.checkState(indexed, "benchmarks must be compiled with the subscriber index processor");
+    }
+
+    @Setup(Level.Invocation)
+    public void loadColdListeners() throws ReflectiveOperationException {
+        coldIndexedListener = loadColdListener(new ColdClassLoader(true));
+        coldReflectiveListener = loadColdListener(new ColdClassLoader(false));
+    }
+
+    /**
+     * Loads a cold listener after priming the per class loader state, such as the index lookup,
+     * which an application pays once rather than per listener class.
+     */
+    private Object loadColdListener(ClassLoader loader) throws ReflectiveOperationException {
+        new SubscriberRegistry(bus).register(loader.loadClass(ColdPrimer.class.getName()).getConstructor().newInstance());
+        return loader.loadClass(ColdListener.class.getName()).getConstructor().newInstance();
+    }
+
+    @Benchmark
+    public Subscriber[] getSubscribersFlat() {
+        return registry.getSubscribers(SUBJECT, flatEvent);
+    }
+
+    @Benchmark
+    public Subscriber[] getSubscribersDeepHierarchy() {
+        return registry.getSubscribers(SUBJECT, deepEvent);
+    }
+
+    @Benchmark
+    public Subscriber[] registerUnregisterChurn() {
+        registry.register(churnListener);
+        registry.unregister(churnListener);
+        return registry.getSubscribers(SUBJECT, flatEvent);
+    }
+
+    @Benchmark
+    public SubscriberRegistry registerOneByOne() {
+        SubscriberRegistry fresh = new SubscriberRegistry(bus);
+        for (FlatListener listener : bulkListeners) {
+            fresh.register(listener);
+        }
+        return fresh;
+    }
+
+    @Benchmark
+    public SubscriberRegistry registerAll() {
+        SubscriberRegistry fresh = new SubscriberRegistry(bus);
+        fresh.registerAll(bulkListeners, false);
+        return fresh;
+    }
+
+    @Benchmark
+    public SubscriberRegistry registerColdIndexed() {
+        SubscriberRegistry fresh = new SubscriberRegistry(bus);
+        fresh.register(coldIndexedListener);
+        return fresh;
+    }
+
+    @Benchmark
+    public SubscriberRegistry registerColdReflective() {
+        SubscriberRegistry fresh = new SubscriberRegistry(bus);
+        fresh.register(coldReflectiveListener);
+        return fresh;
+    }
+
+    /**
+     * Defines fresh copies of the cold listener classes, optionally hiding the subscriber index.
+     */
+    private final class ColdClassLoader extends ClassLoader {
+        private final boolean indexed;
+
+        ColdClassLoader(boolean indexed) {
+            super(SubscriberRegistryBenchmark.class.getClassLoader());
+            this.indexed = indexed;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            byte[] bytecode = coldBytecode.get(name);
+            if (bytecode == null) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> clazz = findLoadedClass(name);
+                if (clazz == null) {
+                    clazz = defineClass(name, bytecode, 0, bytecode.length);
+                }
+                return clazz;
+            }
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            return indexed || !name.equals(INDEX_SERVICE) ? super.getResources(name) : Collections.<URL>emptyEnumeration();
+        }
+    }
+
+    public static class FlatEvent {
+    }
+
+    public interface Marker1 {
+    }
+
+    public interface Marker2 extends Marker1 {
+    }
+
+    public interface Marker3 extends Marker2 {
+    }
+
+    public static class Level1 implements Marker1 {
+    }
+
+    public static class Level2 extends Level1 implements Marker2 {
+    }
+
+    public static class Level3 extends Level2 implements Marker3 {
+    }
+
+    public static class Level4 extends Level3 {
+    }
+
+    public static class Level5 extends Level4 {
+    }
+
+    public static class Level6 extends Level5 {
+    }
+
+    public static class Level7 extends Level6 {
+    }
+
+    public static class DeepEvent extends Level7 {
+    }
+
+    public static class FlatListener {
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onFlat(FlatEvent event) {
+        }
+    }
+
+    public static class HierarchyListener {
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onLevel1(Level1 event) {
+        }
+
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onMarker3(Marker3 event) {
+        }
+
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onLevel5(Level5 event) {
+        }
+    }
+
+    public static class ColdPrimer {
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onFlat(FlatEvent event) {
+        }
+    }
+
+    public interface ColdMarker {
+    }
+
+    public static class ColdBase {
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onBase(FlatEvent event) {
+        }
+    }
+
+    public static class ColdMiddle extends ColdBase implements ColdMarker {
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onMiddle(Level1 event) {
+        }
+    }
+
+    public static class ColdListener extends ColdMiddle {
+        @Subject(SUBJECT)
+        @ParSubscribe
+        public void onListener(Level5 event) {
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package eventbus;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 
-import java.util.Iterator;
-import java.util.Queue;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
 
 /**
  * Handler for dispatching events to subscribers, providing different event ordering guarantees that
@@ -45,14 +48,71 @@ abstract class AbstractDispatcher {
         return ImmediateDispatcher.INSTANCE;
     }
 
+    /**
+     * Returns a dispatcher that queues sync posts {@linkplain #perThreadDispatchQueue() per thread}
+     * and hands async posts to a {@linkplain #legacyAsync() global queue}.
+     */
     static AbstractDispatcher hybrid() {
         return new HybridDispatcher();
     }
 
     /**
-     * Dispatches the given {@code event} to the given {@code subscribers}.
+     * Returns a dispatcher that queues sync posts {@linkplain #perThreadDispatchQueue() per thread}
+     * and hands async posts to {@code asyncDispatcher}.
      */
-    abstract void dispatch(Object event, Iterator<Subscriber> subscribers, boolean sync);
+    static AbstractDispatcher hybrid(AbstractDispatcher asyncDispatcher) {
+        return new HybridDispatcher(perThreadDispatchQueue(), asyncDispatcher);
+    }
+
+    /**
+     * Returns a dispatcher that delivers events on {@code shardCount} single-threaded event loops,
+     * picking the loop by the hash of the key {@code keyExtractor} derives from each event. Events
+     * with equal keys are delivered in posting order, different keys in parallel.
+     *
+     * @see ShardedDispatcher
+     */
+    static ShardedDispatcher sharded(int shardCount, Function<Object, ?> keyExtractor) {
+        return ShardedDispatcher.create(shardCount, keyExtractor);
+    }
+
+    /**
+     * Dispatches the given {@code event}, posted on {@code subject}, to the given {@code subscribers}.
+     */
+    abstract void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync);
+
+    /**
+     * Dispatches a batch of {@code events}, each to the subscribers at the same position of
+     * {@code subscribers}. By default every event is {@linkplain #dispatch dispatched} on its own, which
+     * keeps whatever ordering this dispatcher guarantees; dispatchers that deliver in posting order
+     * anyway hand each subscriber its share of the batch at once instead.
+     */
+    void dispatchAll(String subject, List<Object> events, List<Subscriber[]> subscribers, boolean sync) {
+        for (int i = 0; i < events.size(); i++) {
+            dispatch(subject, events.get(i), subscribers.get(i), sync);
+        }
+    }
+
+    /**
+     * Hands every subscriber its share of the batch in one {@link Subscriber#dispatchEvents} call,
+     * so an async subscriber costs one executor task or lane wake-up per batch rather than per event.
+     */
+    static void dispatchShares(String subject, List<Object> events, List<Subscriber[]> subscribers, boolean sync) {
+        Map<Subscriber, List<Object>> shares = Maps.newLinkedHashMap();
+        for (int i = 0; i < events.size(); i++) {
+            Object event = events.get(i);
+            for (Subscriber subscriber : subscribers.get(i)) {
+                List<Object> share = shares.get(subscriber);
+                if (share == null) {
+                    share = Lists.newArrayList();
+                    shares.put(subscriber, share);
+                }
+                share.add(event);
+            }
+        }
+        for (Map.Entry<Subscriber, List<Object>> share : shares.entrySet()) {
+            share.getKey().dispatchEvents(subject, share.getValue(), sync);
+        }
+    }
 
     /**
      * Implementation of a {@link #perThreadDispatchQueue()} dispatcher.
@@ -62,47 +122,136 @@ abstract class AbstractDispatcher {
         // This dispatcher matches the original dispatch behavior of EventBus.
 
         /**
-         * Per-thread queue of events to dispatch.
-         */
-        private final ThreadLocal<Queue<Event>> queue =
-                ThreadLocal.withInitial(Queues::newArrayDeque);
-
-        /**
-         * Per-thread dispatch state, used to avoid reentrant event dispatching.
+         * Per-thread queue of events to dispatch and dispatch state. Kept for the life of the thread
+         * so a steady stream of sync posts allocates nothing.
          */
-        private final ThreadLocal<Boolean> dispatching =
-                ThreadLocal.withInitial(() -> false);
+        private final ThreadLocal<ThreadQueue> queue = ThreadLocal.withInitial(ThreadQueue::new);
 
         @Override
-        void dispatch(Object event, Iterator<Subscriber> subscribers, boolean sync) {
+        void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync) {
             Preconditions.checkNotNull(event);
             Preconditions.checkNotNull(subscribers);
-            Queue<Event> queueForThread = queue.get();
-            queueForThread.offer(new Event(event, subscribers));
+            ThreadQueue queueForThread = queue.get();
+            queueForThread.offer(subject, event, subscribers);
 
-            if (!dispatching.get()) {
-                dispatching.set(true);
+            // avoid reentrant event dispatching
+            if (!queueForThread.dispatching) {
+                queueForThread.dispatching = true;
                 try {
-                    Event nextEvent;
-                    while ((nextEvent = queueForThread.poll()) != null) {
-                        while (nextEvent.subscribers.hasNext()) {
-                            nextEvent.subscribers.next().dispatchEvent(nextEvent.event, sync);
-                        }
-                    }
+                    drain(queueForThread, sync);
                 } finally {
-                    dispatching.remove();
-                    queue.remove();
+                    queueForThread.dispatching = false;
+                    queueForThread.clear();
                 }
             }
         }
 
-        private static final class Event {
-            private final Object event;
-            private final Iterator<Subscriber> subscribers;
+        /**
+         * Dispatches the batch as a unit: events posted by its subscribers are queued behind the whole
+         * batch, and a batch posted reentrantly is queued event by event like any other post.
+         */
+        @Override
+        void dispatchAll(String subject, List<Object> events, List<Subscriber[]> subscribers, boolean sync) {
+            ThreadQueue queueForThread = queue.get();
+            if (queueForThread.dispatching) {
+                super.dispatchAll(subject, events, subscribers, sync);
+                return;
+            }
+            queueForThread.dispatching = true;
+            try {
+                dispatchShares(subject, events, subscribers, sync);
+                drain(queueForThread, sync);
+            } finally {
+                queueForThread.dispatching = false;
+                queueForThread.clear();
+            }
+        }
 
-            private Event(Object event, Iterator<Subscriber> subscribers) {
-                this.event = event;
-                this.subscribers = subscribers;
+        private static void drain(ThreadQueue queueForThread, boolean sync) {
+            while (!queueForThread.isEmpty()) {
+                String nextSubject = queueForThread.peekSubject();
+                Object nextEvent = queueForThread.peekEvent();
+                Subscriber[] nextSubscribers = queueForThread.peekSubscribers();
+                queueForThread.remove();
+                for (Subscriber subscriber : nextSubscribers) {
+                    subscriber.dispatchEvent(nextSubject, nextEvent, sync);
+                }
+            }
+        }
+
+        /**
+         * Growable FIFO ring of (subject, event, subscribers) triples stored in parallel arrays.
+         */
+        private static final class ThreadQueue {
+            private static final int INITIAL_CAPACITY = 16;
+
+            private String[] subjects = new String[INITIAL_CAPACITY];
+            private Object[] events = new Object[INITIAL_CAPACITY];
+            private Subscriber[][] subscribers = new Subscriber[INITIAL_CAPACITY][];
+            private int head;
+            private int size;
+            private boolean dispatching;
+
+            void offer(String subject, Object event, Subscriber[] eventSubscribers) {
+                if (size == events.length) {
+                    grow();
+                }
+                int tail = (head + size) & (events.length - 1);
+                subjects[tail] = subject;
+                events[tail] = event;
+                subscribers[tail] = eventSubscribers;
+                size++;
+            }
+
+            boolean isEmpty() {
+                return size == 0;
+            }
+
+            String peekSubject() {
+                return subjects[head];
+            }
+
+            Object peekEvent() {
+                return events[head];
+            }
+
+            Subscriber[] peekSubscribers() {
+                return subscribers[head];
+            }
+
+            void remove() {
+                subjects[head] = null;
+                events[head] = null;
+                subscribers[head] = null;
+                head = (head + 1) & (events.length - 1);
+                size--;
+            }
+
+            /**
+             * Drops anything left behind by a subscriber that threw an {@link Error}.
+             */
+            void clear() {
+                while (size > 0) {
+                    remove();
+                }
+                head = 0;
+            }
+
+            private void grow() {
+                int capacity = events.length;
+                String[] newSubjects = new String[capacity << 1];
+                Object[] newEvents = new Object[capacity << 1];
+                Subscriber[][] newSubscribers = new Subscriber[capacity << 1][];
+                for (int i = 0; i < size; i++) {
+                    int index = (head + i) & (capacity - 1);
+                    newSubjects[i] = subjects[index];
+                    newEvents[i] = events[index];
+                    newSubscribers[i] = subscribers[index];
+                }
+                subjects = newSubjects;
+                events = newEvents;
+                subscribers = newSubscribers;
+                head = 0;
             }
         }
     }
@@ -137,23 +286,25 @@ abstract class AbstractDispatcher {
                 Queues.newConcurrentLinkedQueue();
 
         @Override
-        void dispatch(Object event, Iterator<Subscriber> subscribers, boolean sync) {
+        void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync) {
             Preconditions.checkNotNull(event);
-            while (subscribers.hasNext()) {
-                queue.add(new EventWithSubscriber(event, subscribers.next()));
+            for (Subscriber subscriber : subscribers) {
+                queue.add(new EventWithSubscriber(subject, event, subscriber));
             }
 
             EventWithSubscriber e;
             while ((e = queue.poll()) != null) {
-                e.subscriber.dispatchEvent(e.event, sync);
+                e.subscriber.dispatchEvent(e.subject, e.event, sync);
             }
         }
 
         private static final class EventWithSubscriber {
+            private final String subject;
             private final Object event;
             private final Subscriber subscriber;
 
-            private EventWithSubscriber(Object event, Subscriber subscriber) {
+            private EventWithSubscriber(String subject, Object event, Subscriber subscriber) {
+                this.subject = subject;
                 this.event = event;
                 this.subscriber = subscriber;
             }
@@ -167,12 +318,17 @@ abstract class AbstractDispatcher {
         private static final ImmediateDispatcher INSTANCE = new ImmediateDispatcher();
 
         @Override
-        void dispatch(Object event, Iterator<Subscriber> subscribers, boolean sync) {
+        void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync) {
             Preconditions.checkNotNull(event);
-            while (subscribers.hasNext()) {
-                subscribers.next().dispatchEvent(event, sync);
+            for (Subscriber subscriber : subscribers) {
+                subscriber.dispatchEvent(subject, event, sync);
             }
         }
+
+        @Override
+        void dispatchAll(String subject, List<Object> events, List<Subscriber[]> subscribers, boolean sync) {
+            dispatchShares(subject, events, subscribers, sync);
+        }
     }
 
     /**
@@ -189,13 +345,19 @@ abstract class AbstractDispatcher {
 
         HybridDispatcher(AbstractDispatcher syncDispatcher, AbstractDispatcher asyncDispatcher) {
             this.syncDispatcher = Preconditions.checkNotNull(syncDispatcher);
-            this.asyncDispatcher = Preconditions.checkNotNull(syncDispatcher);
+            this.asyncDispatcher = Preconditions.checkNotNull(asyncDispatcher);
+        }
+
+        @Override
+        void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync) {
+            AbstractDispatcher dispatcher = sync ? syncDispatcher : asyncDispatcher;
+            dispatcher.dispatch(subject, event, subscribers, sync);
         }
 
         @Override
-        void dispatch(Object event, Iterator<Subscriber> subscribers, boolean sync) {
+        void dispatchAll(String subject, List<Object> events, List<Subscriber[]> subscribers, boolean sync) {
             AbstractDispatcher dispatcher = sync ? syncDispatcher : asyncDispatcher;
-            dispatcher.dispatch(event, subscribers, sync);
+            dispatcher.dispatchAll(subject, events, subscribers, sync);
         }
     }
 }
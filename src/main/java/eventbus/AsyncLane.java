@@ -0,0 +1,306 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Async events waiting to be delivered to one subscriber.
+ *
+ * @author wuyongkang
+ */
+abstract class AsyncLane {
+    /**
+     * Maximum number of events delivered by one drain before the executor thread is released.
+     */
+    private static final int MAX_DRAIN = 64;
+
+    final Subscriber subscriber;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+    /**
+     * When the pending drain task was handed to the executor, see {@link Subscriber#queueWaitStart()}.
+     */
+    private long drainScheduled;
+
+    private AsyncLane(Subscriber subscriber) {
+        this.subscriber = Preconditions.checkNotNull(subscriber);
+    }
+
+    /**
+     * Returns a lane that queues events in posting order.
+     * <p>A serial lane is drained by at most one executor thread at a time, so pool threads never
+     * block on each other waiting for the subscriber monitor and events are delivered in the order
+     * they were posted. A concurrent lane schedules one task per accepted event and only exists to
+     * bound the number of pending deliveries.
+     * <p>A bounded lane applies its {@link OverflowPolicy} when full and reports every discarded
+     * event to the bus. Under {@link OverflowPolicy#CALLER_RUNS} a serial lane keeps its order: the
+     * posting thread delivers the oldest queued events itself until its own fits, or waits for room
+     * if a drain is already running.
+     *
+     * @param subscriber     the subscriber events are delivered to
+     * @param capacity       the maximum number of pending events, or {@link EventBusImpl#UNBOUNDED}
+     * @param overflowPolicy what to do when a bounded lane is full
+     * @param serial         whether events must be delivered one at a time, in order
+     */
+    static AsyncLane queued(Subscriber subscriber, int capacity, OverflowPolicy overflowPolicy, boolean serial) {
+        return new QueuedLane(subscriber, capacity, overflowPolicy, serial);
+    }
+
+    /**
+     * Returns a lane that keeps only the latest pending event per key. A newer event replaces the
+     * pending one in place, so keys are still delivered in the order they first became pending.
+     * For a subscriber to a wildcard subject the key is qualified by the concrete subject each event
+     * was posted on. Conflating lanes are always drained serially.
+     *
+     * @param subscriber   the subscriber events are delivered to
+     * @param keyExtractor derives the conflation key of an event
+     */
+    static AsyncLane conflating(Subscriber subscriber, Function<Object, ?> keyExtractor) {
+        return new ConflatingLane(subscriber, keyExtractor);
+    }
+
+    /**
+     * Queues {@code event}, posted on {@code subject}, and makes sure it will be delivered.
+     */
+    abstract void add(String subject, Object event);
+
+    /**
+     * Removes the next pending event, or returns {@code null} if there is none.
+     */
+    abstract Object poll();
+
+    abstract boolean isEmpty();
+
+    /**
+     * Makes sure a drain task is running or scheduled.
+     */
+    final void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            drainScheduled = subscriber.queueWaitStart();
+            try {
+                subscriber.executor().execute(drainTask, false, subscriber.getPriority());
+            } catch (RuntimeException e) {
+                draining.set(false);
+                throw e;
+            }
+        }
+    }
+
+    private void drain() {
+        subscriber.recordQueueWait(drainScheduled);
+        try {
+            Object event;
+            for (int i = 0; i < MAX_DRAIN && (event = poll()) != null; i++) {
+                subscriber.deliverEvent(event);
+            }
+        } finally {
+            finishDrain();
+        }
+    }
+
+    /**
+     * Claims the right to drain this lane on the calling thread, held by at most one thread.
+     */
+    final boolean tryStartDrain() {
+        return draining.compareAndSet(false, true);
+    }
+
+    /**
+     * Gives up the right to drain, scheduling a drain task for any events still pending.
+     */
+    final void finishDrain() {
+        draining.set(false);
+        if (!isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * Implementation of {@link #queued(Subscriber, int, OverflowPolicy, boolean)}.
+     */
+    private static final class QueuedLane extends AsyncLane {
+        private final Queue<Object> queue;
+        private final OverflowPolicy overflowPolicy;
+        private final boolean serial;
+        private final Runnable deliverTask = this::deliverOne;
+
+        private QueuedLane(Subscriber subscriber, int capacity, OverflowPolicy overflowPolicy, boolean serial) {
+            super(subscriber);
+            this.queue = capacity == EventBusImpl.UNBOUNDED
+                    ? Queues.newConcurrentLinkedQueue()
+                    : Queues.newArrayBlockingQueue(capacity);
+            this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+            this.serial = serial;
+        }
+
+        @Override
+        void add(String subject, Object event) {
+            if (queue.offer(event)) {
+                schedule();
+                return;
+            }
+
+            switch (overflowPolicy) {
+                case BLOCK:
+                    put(event);
+                    break;
+                case DROP_NEWEST:
+                    subscriber.eventDropped(event);
+                    break;
+                case DROP_OLDEST:
+                    boolean replaced = false;
+                    while (!queue.offer(event)) {
+                        Object oldest = queue.poll();
+                        if (oldest != null) {
+                            replaced = true;
+                            subscriber.eventDropped(oldest);
+                        }
+                    }
+                    // a concurrent lane already has a task scheduled for the event that was replaced
+                    if (serial || !replaced) {
+                        schedule();
+                    }
+                    break;
+                case CALLER_RUNS:
+                    if (serial) {
+                        drainOnCaller(event);
+                    } else {
+                        subscriber.deliverEvent(event);
+                    }
+                    break;
+                default:
+                    throw new AssertionError(overflowPolicy);
+            }
+        }
+
+        private void put(Object event) {
+            try {
+                ((BlockingQueue<Object>) queue).put(event);
+                schedule();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                subscriber.eventDropped(event);
+            }
+        }
+
+        /**
+         * Caller-runs for a serial lane. Running {@code event} right away would overtake the queued
+         * events and race the drain task, so the caller instead becomes the drainer, delivers queued
+         * events until {@code event} fits and leaves the rest to a drain task. While another thread
+         * is draining, the caller waits for room as under {@link OverflowPolicy#BLOCK}.
+         */
+        private void drainOnCaller(Object event) {
+            if (!tryStartDrain()) {
+                put(event);
+                return;
+            }
+            try {
+                while (!queue.offer(event)) {
+                    Object queued = queue.poll();
+                    if (queued != null) {
+                        subscriber.deliverEvent(queued);
+                    }
+                }
+            } finally {
+                finishDrain();
+            }
+        }
+
+        private void schedule() {
+            if (serial) {
+                scheduleDrain();
+                return;
+            }
+
+            long enqueued = subscriber.queueWaitStart();
+            if (enqueued == 0L) {
+                subscriber.executor().execute(deliverTask, false, subscriber.getPriority());
+            } else {
+                subscriber.executor().execute(() -> {
+                    subscriber.recordQueueWait(enqueued);
+                    deliverOne();
+                }, false, subscriber.getPriority());
+            }
+        }
+
+        private void deliverOne() {
+            Object event = queue.poll();
+            if (event != null) {
+                subscriber.deliverEvent(event);
+            }
+        }
+
+        @Override
+        Object poll() {
+            return queue.poll();
+        }
+
+        @Override
+        boolean isEmpty() {
+            return queue.isEmpty();
+        }
+    }
+
+    /**
+     * Implementation of {@link #conflating(Subscriber, Function)}.
+     */
+    private static final class ConflatingLane extends AsyncLane {
+        private final Function<Object, ?> keyExtractor;
+        /**
+         * Whether the subscriber listens on a pattern, so keys are qualified by the posted subject.
+         */
+        private final boolean wildcard;
+        /**
+         * Latest pending event per key, in the order keys became pending. Guarded by {@code this}.
+         */
+        private final Map<Object, Object> pending = Maps.newLinkedHashMap();
+
+        private ConflatingLane(Subscriber subscriber, Function<Object, ?> keyExtractor) {
+            super(subscriber);
+            this.keyExtractor = Preconditions.checkNotNull(keyExtractor);
+            this.wildcard = SubjectTrie.isPattern(subscriber.getSubject());
+        }
+
+        @Override
+        void add(String subject, Object event) {
+            Object key = Preconditions.checkNotNull(keyExtractor.apply(PostCompletion.unwrap(event)), "conflation key");
+            if (wildcard) {
+                // events of different subjects matching the pattern never replace each other
+                key = Maps.immutableEntry(subject, key);
+            }
+            Object replaced;
+            synchronized (this) {
+                replaced = pending.put(key, event);
+            }
+            if (replaced instanceof PostCompletion) {
+                // superseded by a newer event, which counts as delivered
+                ((PostCompletion) replaced).completed(null, null, null);
+            }
+            scheduleDrain();
+        }
+
+        @Override
+        synchronized Object poll() {
+            Iterator<Object> events = pending.values().iterator();
+            if (!events.hasNext()) {
+                return null;
+            }
+            Object event = events.next();
+            events.remove();
+            return event;
+        }
+
+        @Override
+        synchronized boolean isEmpty() {
+            return pending.isEmpty();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package eventbus;
 
+import java.util.Collection;
 import java.util.EventListener;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Dispatches events to listeners, and provides ways for listeners to register themselves
@@ -15,6 +18,21 @@ public interface EventBus {
      */
     void register(Object object);
 
+    /**
+     * Registers the listeners in one step, which is much cheaper than registering them one by one
+     *
+     * @param objects the listener instances
+     */
+    void registerAll(Iterable<?> objects);
+
+    /**
+     * Registers the listener without keeping it reachable; once it is garbage collected its
+     * subscribers are removed in the background
+     *
+     * @param object the listener instance
+     */
+    void registerWeakly(Object object);
+
     /**
      * Registers the listener
      *
@@ -41,6 +59,13 @@ public interface EventBus {
      */
     void unregister(Object object);
 
+    /**
+     * Unregisters the listeners in one step; if one of them is not registered, none is unregistered
+     *
+     * @param objects the listener instances
+     */
+    void unregisterAll(Iterable<?> objects);
+
     /**
      * Unregisters the listener
      *
@@ -59,6 +84,86 @@ public interface EventBus {
      */
     void post(String subject, Object event, boolean sync);
 
+    /**
+     * Post event to the listeners by async mode, and returns a future that completes once every
+     * matched subscriber has run. If any subscriber fails, the future completes exceptionally with a
+     * {@link SubscriberFailureException} carrying every failure; the exception handler still sees
+     * each of them. An event without subscribers completes the future immediately.
+     *
+     * @param subject event subject
+     * @param event   event message
+     * @return a future completing after delivery to all subscribers
+     */
+    CompletableFuture<Void> postAsync(String subject, Object event);
+
+    /**
+     * Post event to the listeners by async mode
+     *
+     * @param event event message
+     * @return a future completing after delivery to all subscribers
+     * @see #postAsync(String, Object)
+     */
+    CompletableFuture<Void> postAsync(Object event);
+
+    /**
+     * Post event to the listeners by async mode and collects the values their subscriber methods
+     * return. {@code void} methods and {@code null} results are not replies. The future completes
+     * once every matched subscriber has run, or exceptionally with a
+     * {@link SubscriberFailureException} if any of them failed.
+     *
+     * @param subject event subject
+     * @param event   event message
+     * @return a future of all replies, in arrival order
+     */
+    CompletableFuture<List<Object>> request(String subject, Object event);
+
+    /**
+     * Post event to the listeners by async mode and collects the first {@code maxReplies} values
+     * their subscriber methods return. The future completes as soon as {@code maxReplies} replies
+     * arrived; otherwise once every matched subscriber has run, with the replies collected so far or
+     * exceptionally if a subscriber failed.
+     *
+     * @param subject    event subject
+     * @param event      event message
+     * @param maxReplies the number of replies to wait for
+     * @return a future of at most {@code maxReplies} replies, in arrival order
+     * @see #request(String, Object)
+     */
+    CompletableFuture<List<Object>> request(String subject, Object event, int maxReplies);
+
+    /**
+     * Post event to the listeners by async mode and returns the first value a subscriber method
+     * returns, or {@code null} if none did.
+     *
+     * @param subject event subject
+     * @param event   event message
+     * @return a future of the first reply
+     * @see #request(String, Object, int)
+     */
+    CompletableFuture<Object> requestFirst(String subject, Object event);
+
+    /**
+     * Post a batch of events to the listeners by sync or async mode. Subscribers are resolved once
+     * per event class and each subscriber receives its share of the batch, in batch order, in a
+     * single executor task, unless the bus's dispatcher imposes its own order, such as per key or
+     * through a ring buffer, in which case the batch is dispatched event by event.
+     *
+     * @param subject event subject
+     * @param events  event messages
+     * @param sync    a {@code true} represents sync mode, otherwise async mode
+     */
+    void postAll(String subject, Collection<?> events, boolean sync);
+
+    /**
+     * Post a batch of events to the listeners by sync or async mode
+     *
+     * @param subject event subject
+     * @param events  event messages
+     * @param sync    a {@code true} represents sync mode, otherwise async mode
+     * @see #postAll(String, Collection, boolean)
+     */
+    void postAll(String subject, Object[] events, boolean sync);
+
     /**
      * Post event to the listeners by sync or async mode
      *
@@ -0,0 +1,476 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import netty.elite.RobotDataFrame;
+import netty.elite.RobotDataFrameDecoder;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forwards selected subjects between buses in different processes over TCP, using the
+ * {@code [int length][byte type][payload]} framing of {@link RobotDataFrameDecoder}. A bridge can
+ * {@linkplain #listen(int) accept} and {@linkplain #connect(String, int) open} connections; every
+ * connection is symmetric.
+ * <p>Each side tells its peers which of the bridged subjects currently have local subscribers, and
+ * keeps that list up to date as listeners are registered and unregistered. A post is forwarded only
+ * to the peers subscribed to its subject, and only if its event type has a
+ * {@linkplain #registerSerializer(Class, EventSerializer) serializer}. Received events are posted by
+ * async mode on the receiving bus, without being journaled or forwarded again.
+ * <p>Frames are queued per connection; the first frame queued after a flush schedules one task on
+ * the connection's event loop that writes every queued frame and flushes once, so a burst of posts
+ * leaves in as few packets as possible. Frames are only handed to a connection while it is writable,
+ * and at most {@code maxPendingEvents} events wait per connection; beyond that the
+ * {@link OverflowPolicy} decides, and every discarded event counts as a dropped event of its subject
+ * on the local bus. Subscription frames are never discarded.
+ *
+ * @author wuyongkang
+ */
+public final class EventBusBridge implements Closeable {
+    private static final Logger logger = Logger.getLogger(EventBusBridge.class.getName());
+    private static final int EVENT_FRAME = 40;
+    private static final int SUBSCRIBE_FRAME = 41;
+    private static final int UNSUBSCRIBE_FRAME = 42;
+    /**
+     * Default maximum number of events waiting to be written to one connection.
+     */
+    public static final int DEFAULT_MAX_PENDING_EVENTS = 8192;
+
+    private final EventBusImpl bus;
+    private final ImmutableSet<String> subjects;
+    private final ConcurrentMap<String, EventSerializer<Object>> serializers = Maps.newConcurrentMap();
+    private final int maxPendingEvents;
+    private final OverflowPolicy overflowPolicy;
+    private final LongAdder droppedEvents = new LongAdder();
+    private final EventLoopGroup group;
+    private final Set<Channel> channels = new CopyOnWriteArraySet<>();
+    private final Set<Peer> peers = new CopyOnWriteArraySet<>();
+    /**
+     * Bridged subjects with local subscribers, as last announced to the peers. Guarded by {@code this}.
+     */
+    private Set<String> localSubjects = ImmutableSet.of();
+
+    private EventBusBridge(EventBusImpl bus, Set<String> subjects, int maxPendingEvents, OverflowPolicy overflowPolicy) {
+        Preconditions.checkArgument(maxPendingEvents > 0, "maxPendingEvents must be positive");
+        Preconditions.checkArgument(
+                overflowPolicy == OverflowPolicy.DROP_NEWEST || overflowPolicy == OverflowPolicy.BLOCK,
+                "Bridges support DROP_NEWEST and BLOCK, not %s", overflowPolicy);
+        this.bus = Preconditions.checkNotNull(bus);
+        this.maxPendingEvents = maxPendingEvents;
+        this.overflowPolicy = overflowPolicy;
+        this.subjects = ImmutableSet.copyOf(subjects);
+        for (String subject : this.subjects) {
+            Preconditions.checkArgument(!SubjectTrie.isPattern(subject), "Cannot bridge wildcard subject %s", subject);
+        }
+        this.group = new NioEventLoopGroup(1, new ThreadFactoryBuilder()
+                .setNameFormat("eventbus-bridge-%d")
+                .setDaemon(true)
+                .build());
+        bus.addBridge(this);
+        subscriptionsChanged();
+    }
+
+    /**
+     * Creates a bridge forwarding {@code subjects} of {@code bus}, queueing up to
+     * {@link #DEFAULT_MAX_PENDING_EVENTS} events per connection and dropping the newest beyond that.
+     * It has no connections until {@link #listen(int)} or {@link #connect(String, int)} is called.
+     *
+     * @param bus      the local bus
+     * @param subjects the subjects to share with peers, without wildcards
+     * @return a new bridge
+     */
+    public static EventBusBridge create(EventBusImpl bus, Set<String> subjects) {
+        return create(bus, subjects, DEFAULT_MAX_PENDING_EVENTS, OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * Creates a bridge forwarding {@code subjects} of {@code bus}. It has no connections until
+     * {@link #listen(int)} or {@link #connect(String, int)} is called.
+     *
+     * @param bus              the local bus
+     * @param subjects         the subjects to share with peers, without wildcards
+     * @param maxPendingEvents the maximum number of events waiting to be written to one connection
+     * @param overflowPolicy   {@link OverflowPolicy#DROP_NEWEST} or {@link OverflowPolicy#BLOCK}; a
+     *                         post on a connection's own event loop is never blocked and drops instead
+     * @return a new bridge
+     */
+    public static EventBusBridge create(EventBusImpl bus, Set<String> subjects, int maxPendingEvents,
+                                        OverflowPolicy overflowPolicy) {
+        return new EventBusBridge(bus, subjects, maxPendingEvents, overflowPolicy);
+    }
+
+    /**
+     * Registers the serializer of events of exactly {@code type}. Events of other types are not
+     * forwarded, and both sides must register the same serializers.
+     *
+     * @param type       the event class
+     * @param serializer the serializer
+     * @param <T>        the event type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void registerSerializer(Class<T> type, EventSerializer<T> serializer) {
+        serializers.put(type.getName(), (EventSerializer<Object>) Preconditions.checkNotNull(serializer));
+    }
+
+    /**
+     * Accepts connections from peers on {@code port}.
+     *
+     * @param port the port to listen on, {@code 0} for any free port
+     * @return the bound port
+     */
+    public int listen(int port) {
+        Channel server = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new PeerInitializer())
+                .bind(port)
+                .syncUninterruptibly()
+                .channel();
+        channels.add(server);
+        return ((InetSocketAddress) server.localAddress()).getPort();
+    }
+
+    /**
+     * Connects to a peer listening on {@code host} and {@code port}.
+     *
+     * @param host the peer host
+     * @param port the peer port
+     */
+    public void connect(String host, int port) {
+        new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new PeerInitializer())
+                .connect(host, port)
+                .syncUninterruptibly();
+    }
+
+    /**
+     * Returns whether a connected peer has subscribers on {@code subject}.
+     *
+     * @param subject the subject
+     * @return whether events posted on {@code subject} are forwarded
+     */
+    public boolean hasRemoteSubscribers(String subject) {
+        for (Peer peer : peers) {
+            if (peer.remoteSubjects.contains(subject)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of events not forwarded because a connection had too many pending events.
+     *
+     * @return the number of dropped events
+     */
+    public long getDroppedEventCount() {
+        return droppedEvents.sum();
+    }
+
+    /**
+     * Stops forwarding, closes all connections and releases the event loop.
+     */
+    @Override
+    public void close() {
+        bus.removeBridge(this);
+        for (Channel channel : channels) {
+            channel.close();
+        }
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    /**
+     * Sends {@code event} to every peer subscribed to {@code subject}.
+     */
+    void forward(String subject, Object event) {
+        if (peers.isEmpty() || !subjects.contains(subject)) {
+            return;
+        }
+        String type = event.getClass().getName();
+        EventSerializer<Object> serializer = serializers.get(type);
+        if (serializer == null) {
+            return;
+        }
+        byte[] payload = null;
+        for (Peer peer : peers) {
+            if (peer.remoteSubjects.contains(subject)) {
+                if (payload == null) {
+                    payload = serializer.serialize(event);
+                }
+                peer.sendEvent(subject, type, payload);
+            }
+        }
+    }
+
+    /**
+     * Announces the bridged subjects that gained or lost their last local subscriber.
+     */
+    synchronized void subscriptionsChanged() {
+        Set<String> current = Sets.newHashSet();
+        for (String subject : subjects) {
+            if (bus.hasSubscribers(subject)) {
+                current.add(subject);
+            }
+        }
+        for (Peer peer : peers) {
+            for (String subject : Sets.difference(current, localSubjects)) {
+                peer.sendSubscription(SUBSCRIBE_FRAME, subject);
+            }
+            for (String subject : Sets.difference(localSubjects, current)) {
+                peer.sendSubscription(UNSUBSCRIBE_FRAME, subject);
+            }
+        }
+        localSubjects = current;
+    }
+
+    private synchronized void peerConnected(Peer peer) {
+        peers.add(peer);
+        for (String subject : localSubjects) {
+            peer.sendSubscription(SUBSCRIBE_FRAME, subject);
+        }
+    }
+
+    private void received(String subject, String type, byte[] payload) {
+        EventSerializer<Object> serializer = serializers.get(type);
+        if (serializer == null) {
+            logger.log(Level.WARNING, "No serializer for {0}, dropping event on {1}", new Object[]{type, subject});
+            return;
+        }
+        bus.postFromBridge(subject, serializer.deserialize(payload));
+    }
+
+    private static void writeString(ByteBuf buf, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buf.writeInt(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf buf) {
+        byte[] bytes = new byte[buf.readInt()];
+        buf.readBytes(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class PeerInitializer extends ChannelInitializer<SocketChannel> {
+        @Override
+        protected void initChannel(SocketChannel ch) {
+            ch.pipeline().addLast(new RobotDataFrameDecoder(), new Peer());
+        }
+    }
+
+    /**
+     * One connection, and the subjects its remote side is subscribed to.
+     */
+    private final class Peer extends SimpleChannelInboundHandler<RobotDataFrame> {
+        private final Set<String> remoteSubjects = Sets.newConcurrentHashSet();
+        /**
+         * Frames waiting for the next flush, written by the event loop in one batch.
+         */
+        private final Queue<ByteBuf> pending = new ConcurrentLinkedQueue<>();
+        /**
+         * Number of event frames in {@link #pending} or reserved for it; guards the bound.
+         */
+        private final AtomicInteger pendingEvents = new AtomicInteger();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final Runnable flush = this::flush;
+        private Channel channel;
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) {
+            channel = ctx.channel();
+            channels.add(channel);
+            peerConnected(this);
+            ctx.fireChannelActive();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            peers.remove(this);
+            channels.remove(channel);
+            ByteBuf frame;
+            while ((frame = pending.poll()) != null) {
+                frame.release();
+            }
+            synchronized (this) {
+                // wake blocked senders, which give up once the channel is inactive
+                notifyAll();
+            }
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            if (ctx.channel().isWritable() && !pending.isEmpty()) {
+                scheduleFlush();
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, RobotDataFrame frame) {
+            ByteBuf payload = frame.getPayload();
+            try {
+                switch (frame.getFrameType()) {
+                    case EVENT_FRAME:
+                        String subject = readString(payload);
+                        String type = readString(payload);
+                        byte[] bytes = new byte[payload.readableBytes()];
+                        payload.readBytes(bytes);
+                        received(subject, type, bytes);
+                        break;
+                    case SUBSCRIBE_FRAME:
+                        remoteSubjects.add(readString(payload));
+                        break;
+                    case UNSUBSCRIBE_FRAME:
+                        remoteSubjects.remove(readString(payload));
+                        break;
+                    default:
+                        logger.log(Level.WARNING, "Unknown frame type {0}", frame.getFrameType());
+                }
+            } finally {
+                payload.release();
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.log(Level.WARNING, "Closing bridge connection " + ctx.channel(), cause);
+            ctx.close();
+        }
+
+        void sendEvent(String subject, String type, byte[] payload) {
+            if (!reserve()) {
+                droppedEvents.increment();
+                bus.eventDropped(subject);
+                return;
+            }
+            ByteBuf frame = newFrame(EVENT_FRAME);
+            writeString(frame, subject);
+            writeString(frame, type);
+            frame.writeBytes(payload);
+            send(frame);
+        }
+
+        void sendSubscription(int frameType, String subject) {
+            ByteBuf frame = newFrame(frameType);
+            writeString(frame, subject);
+            send(frame);
+        }
+
+        /**
+         * Reserves room for one event frame, waiting for it under {@link OverflowPolicy#BLOCK}.
+         *
+         * @return whether the event may be queued
+         */
+        private boolean reserve() {
+            if (pendingEvents.incrementAndGet() <= maxPendingEvents) {
+                return true;
+            }
+            pendingEvents.decrementAndGet();
+            if (overflowPolicy != OverflowPolicy.BLOCK || channel.eventLoop().inEventLoop()) {
+                return false;
+            }
+
+            boolean interrupted = false;
+            try {
+                synchronized (this) {
+                    while (channel.isActive()) {
+                        if (pendingEvents.incrementAndGet() <= maxPendingEvents) {
+                            return true;
+                        }
+                        pendingEvents.decrementAndGet();
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    return false;
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private ByteBuf newFrame(int frameType) {
+            ByteBuf frame = channel.alloc().buffer();
+            // the length is filled in by send
+            frame.writeInt(0);
+            frame.writeByte(frameType);
+            return frame;
+        }
+
+        private void send(ByteBuf frame) {
+            frame.setInt(0, frame.readableBytes());
+            pending.add(frame);
+            scheduleFlush();
+        }
+
+        private void scheduleFlush() {
+            if (flushScheduled.compareAndSet(false, true)) {
+                channel.eventLoop().execute(flush);
+            }
+        }
+
+        /**
+         * Writes queued frames while the channel is writable, then flushes once. Frames left behind
+         * are written when {@link #channelWritabilityChanged} reports room again.
+         */
+        private void flush() {
+            // cleared first, so a frame queued during the drain schedules another flush
+            flushScheduled.set(false);
+            int events = 0;
+            ByteBuf frame;
+            while (channel.isWritable() && (frame = pending.poll()) != null) {
+                if (frame.getUnsignedByte(4) == EVENT_FRAME) {
+                    events++;
+                }
+                channel.write(frame, channel.voidPromise());
+            }
+            channel.flush();
+            if (events > 0) {
+                pendingEvents.addAndGet(-events);
+                if (overflowPolicy == OverflowPolicy.BLOCK) {
+                    synchronized (this) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -3,11 +3,31 @@ package eventbus;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import javax.annotation.Nullable;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.EventListener;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Dispatches events to listeners, and provides ways for listeners to register themselves.
@@ -16,9 +36,78 @@ import java.util.concurrent.Executor;
  */
 public class EventBusImpl implements EventBus {
     static final String DEFAULT_SUBJECT = "event.subject.default";
+    /**
+     * Capacity of an unbounded subscriber queue.
+     */
+    static final int UNBOUNDED = 0;
+    /**
+     * Default maximum number of event classes retained per sticky subject.
+     */
+    static final int DEFAULT_STICKY_EVENTS = 16;
+    /**
+     * Default execution time up to which adaptive dispatch runs a subscriber inline.
+     */
+    static final long DEFAULT_INLINE_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    /**
+     * Default execution time from which adaptive dispatch offloads a subscriber.
+     */
+    static final long DEFAULT_OFFLOAD_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * Number of subjects counted one by one in per-subject counters, as many as
+     * {@link SubscriberRegistry} caches; events on further subjects are counted together under
+     * {@link #OTHER_SUBJECTS}.
+     */
+    static final int MAX_COUNTED_SUBJECTS = 4096;
+    /**
+     * Subject of the counter shared by all subjects beyond {@link #MAX_COUNTED_SUBJECTS}.
+     */
+    static final String OTHER_SUBJECTS = "event.subject.other";
     private final String name;
     private final HybridExecutor executor;
     private final SubscriberExceptionHandler exceptionHandler;
+    private final int asyncQueueCapacity;
+    private final OverflowPolicy overflowPolicy;
+    /**
+     * Number of async events discarded by bounded subscriber queues, indexed by subject, for at
+     * most {@link #MAX_COUNTED_SUBJECTS} subjects.
+     */
+    private final ConcurrentMap<String, LongAdder> droppedEvents = Maps.newConcurrentMap();
+    /**
+     * Number of posts without subscribers, indexed by subject, for at most
+     * {@link #MAX_COUNTED_SUBJECTS} subjects.
+     */
+    private final ConcurrentMap<String, LongAdder> deadEvents = Maps.newConcurrentMap();
+    /**
+     * Retained last events of the subjects in sticky mode.
+     */
+    private final ConcurrentMap<String, StickyEvents> stickySubjects = Maps.newConcurrentMap();
+    /**
+     * Journal recording async posts, or {@code null} if there is none.
+     */
+    @Nullable
+    private volatile EventJournal journal;
+    /**
+     * Conflation key extractors of the subjects in latest-value mode.
+     */
+    private final ConcurrentMap<String, Function<Object, ?>> conflatedSubjects = Maps.newConcurrentMap();
+    /**
+     * Bridges forwarding posts to other processes.
+     */
+    private final List<EventBusBridge> bridges = new CopyOnWriteArrayList<>();
+    /**
+     * Metrics of this bus, or {@code null} while metrics are disabled.
+     */
+    @Nullable
+    private volatile EventBusMetrics metrics;
+
+    /**
+     * Whether async events are delivered on virtual threads.
+     */
+    private final boolean virtualThreads;
+    /**
+     * Number of synchronized deliveries that pinned a virtual thread's carrier.
+     */
+    private final LongAdder pinnedDeliveries = new LongAdder();
 
     private final ObserverRegistry observers = new ObserverRegistry();
     private final SubscriberRegistry subscribers = new SubscriberRegistry(this);
@@ -42,15 +131,102 @@ public class EventBusImpl implements EventBus {
                 exceptionHandler);
     }
 
+    /**
+     * Creates an event bus whose async posts are delivered through {@code ringBuffer} instead of
+     * {@code executor}.
+     *
+     * @param name       the identifier for this event bus
+     * @param executor   the executor used by sync posts that hand off work
+     * @param ringBuffer the dispatcher for async posts
+     */
+    public EventBusImpl(String name, Executor executor, RingBufferDispatcher ringBuffer) {
+        this(name,
+                executor,
+                AbstractDispatcher.hybrid(ringBuffer),
+                LoggingHandler.INSTANCE);
+    }
+
+    /**
+     * Creates an event bus whose async posts are delivered by the event loops of {@code shards},
+     * in posting order per shard key.
+     *
+     * @param name     the identifier for this event bus
+     * @param executor the executor used by sync posts that hand off work
+     * @param shards   the dispatcher for async posts
+     */
+    public EventBusImpl(String name, Executor executor, ShardedDispatcher shards) {
+        this(name,
+                executor,
+                AbstractDispatcher.hybrid(shards),
+                LoggingHandler.INSTANCE);
+    }
+
+    /**
+     * Creates an event bus that keeps at most {@code asyncQueueCapacity} pending async events per
+     * subscriber and applies {@code overflowPolicy} once a subscriber falls behind.
+     *
+     * @param name               the identifier for this event bus
+     * @param executor           the executor async events are delivered on
+     * @param asyncQueueCapacity the maximum number of pending async events per subscriber
+     * @param overflowPolicy     what an async post does when a subscriber queue is full
+     */
+    public EventBusImpl(String name, Executor executor, int asyncQueueCapacity, OverflowPolicy overflowPolicy) {
+        this(name,
+                executor,
+                AbstractDispatcher.hybrid(),
+                LoggingHandler.INSTANCE,
+                asyncQueueCapacity,
+                overflowPolicy);
+        Preconditions.checkArgument(asyncQueueCapacity > 0, "asyncQueueCapacity must be positive");
+    }
+
     public EventBusImpl(
             String name,
             Executor executor,
             AbstractDispatcher dispatcher,
             SubscriberExceptionHandler exceptionHandler) {
+        this(name, executor, dispatcher, exceptionHandler, UNBOUNDED, OverflowPolicy.BLOCK);
+    }
+
+    EventBusImpl(
+            String name,
+            Executor executor,
+            AbstractDispatcher dispatcher,
+            SubscriberExceptionHandler exceptionHandler,
+            int asyncQueueCapacity,
+            OverflowPolicy overflowPolicy) {
         this.name = Preconditions.checkNotNull(name);
         this.executor = new HybridExecutor(executor);
         this.dispatcher = Preconditions.checkNotNull(dispatcher);
         this.exceptionHandler = Preconditions.checkNotNull(exceptionHandler);
+        this.asyncQueueCapacity = asyncQueueCapacity;
+        this.overflowPolicy = Preconditions.checkNotNull(overflowPolicy);
+        this.virtualThreads = executor instanceof VirtualThreads.VirtualThreadExecutor;
+    }
+
+    /**
+     * Creates an event bus that delivers every async event on a virtual thread of its own, so
+     * subscribers that block do not need a large platform thread pool.
+     * <p>Subscribers that are not thread-safe deliver under a monitor, which pins the carrier thread
+     * while they block; such deliveries are counted by {@link #getPinnedDeliveryCount()} and the
+     * first one of each subscriber is logged.
+     *
+     * @param name the identifier for this event bus
+     * @return a new event bus
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     * @see #isVirtualThreadsSupported()
+     */
+    public static EventBusImpl withVirtualThreads(String name) {
+        return new EventBusImpl(name, VirtualThreads.newExecutor());
+    }
+
+    /**
+     * Returns whether this runtime supports {@link #withVirtualThreads(String)}.
+     *
+     * @return {@code true} on Java 21 or later
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.isSupported();
     }
 
     /**
@@ -69,6 +245,410 @@ public class EventBusImpl implements EventBus {
         return executor;
     }
 
+    /**
+     * Returns the maximum number of pending async events per subscriber, or {@link #UNBOUNDED}.
+     */
+    final int asyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    /**
+     * Returns what an async post does when a subscriber queue is full.
+     */
+    final OverflowPolicy overflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Puts {@code subject} in latest-value mode: when a subscriber has not yet consumed a pending
+     * async event, a newer one replaces it. Only subscribers registered afterwards are affected,
+     * and sync posts are never conflated. A wildcard {@code subject} conflates each concrete subject
+     * matching it separately.
+     *
+     * @param subject the event subject
+     */
+    public void conflate(String subject) {
+        conflate(subject, event -> subject);
+    }
+
+    /**
+     * Puts {@code subject} in latest-value mode keyed by {@code keyExtractor}: a newer async event
+     * only replaces a pending one with an equal key, for example the same robot or joint.
+     *
+     * @param subject      the event subject
+     * @param keyExtractor derives the conflation key of an event
+     * @see #conflate(String)
+     */
+    public void conflate(String subject, Function<Object, ?> keyExtractor) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(subject), "Subject is required.");
+        conflatedSubjects.put(subject, Preconditions.checkNotNull(keyExtractor));
+    }
+
+    /**
+     * Returns the conflation key extractor of {@code subject}, or {@code null} if it is not in
+     * latest-value mode.
+     */
+    @Nullable
+    final Function<Object, ?> conflationKey(String subject) {
+        return conflatedSubjects.get(subject);
+    }
+
+    /**
+     * Puts {@code subject} in sticky mode: the bus retains the last event posted on it per event
+     * class and delivers the retained events to every listener registered afterwards, synchronously
+     * within {@link #register(Object)}. At most {@value #DEFAULT_STICKY_EVENTS} event classes are
+     * retained.
+     *
+     * @param subject the event subject
+     */
+    public void sticky(String subject) {
+        sticky(subject, DEFAULT_STICKY_EVENTS);
+    }
+
+    /**
+     * Puts {@code subject} in sticky mode, retaining at most {@code maxEvents} event classes; posting
+     * an event of another class evicts the least recently posted one.
+     *
+     * @param subject   the event subject
+     * @param maxEvents the maximum number of retained events
+     * @see #sticky(String)
+     */
+    public void sticky(String subject, int maxEvents) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(subject), "Subject is required.");
+        stickySubjects.putIfAbsent(subject, new StickyEvents(maxEvents));
+    }
+
+    /**
+     * Returns the retained last event of {@code eventType} on the sticky {@code subject}.
+     *
+     * @param subject   the event subject
+     * @param eventType the exact event class
+     * @param <T>       the event type
+     * @return the retained event, or {@code null} if there is none
+     */
+    @Nullable
+    public <T> T getStickyEvent(String subject, Class<T> eventType) {
+        StickyEvents sticky = stickySubjects.get(subject);
+        return sticky == null ? null : eventType.cast(sticky.get(eventType));
+    }
+
+    /**
+     * Evicts the retained last event of {@code eventType} on {@code subject}.
+     *
+     * @param subject   the event subject
+     * @param eventType the exact event class
+     * @return the evicted event, or {@code null} if there was none
+     */
+    @Nullable
+    public Object removeStickyEvent(String subject, Class<?> eventType) {
+        StickyEvents sticky = stickySubjects.get(subject);
+        return sticky == null ? null : sticky.remove(eventType);
+    }
+
+    /**
+     * Evicts all retained events of {@code subject}; the subject stays in sticky mode.
+     *
+     * @param subject the event subject
+     */
+    public void clearStickyEvents(String subject) {
+        StickyEvents sticky = stickySubjects.get(subject);
+        if (sticky != null) {
+            sticky.clear();
+        }
+    }
+
+    /**
+     * Retains {@code event} if {@code subject} is in sticky mode.
+     */
+    private void retainSticky(String subject, Object event) {
+        if (stickySubjects.isEmpty()) {
+            return;
+        }
+        StickyEvents sticky = stickySubjects.get(subject);
+        if (sticky != null) {
+            sticky.put(event);
+        }
+    }
+
+    /**
+     * Delivers the retained sticky events to the subscribers of the newly registered
+     * {@code listener}. A listener registering while an event is being posted may receive it twice.
+     */
+    private void deliverSticky(Object listener) {
+        Set<Object> listeners = Sets.newIdentityHashSet();
+        listeners.add(listener);
+        deliverSticky(listeners);
+    }
+
+    /**
+     * Delivers the retained sticky events to the subscribers of the newly registered
+     * {@code listeners}, an identity set, walking the subscribers of each sticky event only once.
+     */
+    private void deliverSticky(Set<Object> listeners) {
+        for (Map.Entry<String, StickyEvents> entry : stickySubjects.entrySet()) {
+            for (Object event : entry.getValue().snapshot()) {
+                for (Subscriber subscriber : subscribers.getSubscribers(entry.getKey(), event)) {
+                    if (listeners.contains(subscriber.getTarget())) {
+                        subscriber.dispatchEvent(entry.getKey(), event, true);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Attaches {@code journal}, which from now on records every async post of an event type it has a
+     * serializer for, before the event is dispatched. Sync posts are not journaled.
+     *
+     * @param journal the journal, or {@code null} to stop journaling
+     */
+    public void setJournal(@Nullable EventJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Replays the attached journal from {@code fromOffset}, posting every recorded event again by
+     * async mode without journaling it a second time.
+     *
+     * @param fromOffset the offset to start at, {@code 0} for the whole journal
+     * @return the offset just past the last replayed record
+     * @throws IOException if the journal cannot be read
+     * @see EventJournal#replay(long, EventJournal.ReplayHandler)
+     */
+    public long replayJournal(long fromOffset) throws IOException {
+        EventJournal journal = this.journal;
+        Preconditions.checkState(journal != null, "No journal attached");
+        return journal.replay(fromOffset, (offset, subject, event) -> publish(subject, event, false));
+    }
+
+    /**
+     * Appends {@code event} to the attached journal if its type is journaled.
+     */
+    private void journal(String subject, Object event) {
+        EventJournal journal = this.journal;
+        if (journal != null && journal.canJournal(event.getClass())) {
+            journal.append(subject, event);
+        }
+    }
+
+    void addBridge(EventBusBridge bridge) {
+        bridges.add(bridge);
+    }
+
+    void removeBridge(EventBusBridge bridge) {
+        bridges.remove(bridge);
+    }
+
+    /**
+     * Hands {@code event} to the attached bridges, which forward it if a peer subscribes to
+     * {@code subject}.
+     */
+    private void forward(String subject, Object event) {
+        if (!bridges.isEmpty()) {
+            for (EventBusBridge bridge : bridges) {
+                bridge.forward(subject, event);
+            }
+        }
+    }
+
+    /**
+     * Lets the attached bridges announce subjects that gained or lost their last subscriber.
+     */
+    void subscriptionsChanged() {
+        if (!bridges.isEmpty()) {
+            for (EventBusBridge bridge : bridges) {
+                bridge.subscriptionsChanged();
+            }
+        }
+    }
+
+    /**
+     * Returns whether any listener subscribes to {@code subject}, directly or through a wildcard.
+     */
+    boolean hasSubscribers(String subject) {
+        return subscribers.hasSubscribers(subject);
+    }
+
+    /**
+     * Posts an event received by a bridge by async mode, without journaling or forwarding it again.
+     */
+    void postFromBridge(String subject, Object event) {
+        publish(subject, event, false);
+    }
+
+    /**
+     * Starts collecting metrics for this bus, if not already collecting.
+     *
+     * @return the metrics of this bus
+     */
+    public synchronized EventBusMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new EventBusMetrics(this);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops collecting metrics and discards the ones collected so far.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Enables adaptive dispatch with the default thresholds: subscribers averaging at most 20 µs run
+     * inline, those averaging 1 ms or more are offloaded.
+     *
+     * @see #enableAdaptiveDispatch(long, long, TimeUnit)
+     */
+    public void enableAdaptiveDispatch() {
+        enableAdaptiveDispatch(DEFAULT_INLINE_THRESHOLD_NANOS, DEFAULT_OFFLOAD_THRESHOLD_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Enables adaptive dispatch, which places deliveries by a decaying average of each subscriber's
+     * execution time instead of only by the {@code sync} flag of the post: a subscriber averaging at
+     * most {@code inlineThreshold} runs inline even for async posts, saving the thread handoff, and
+     * one averaging at least {@code offloadThreshold} runs on the executor even for sync posts, so it
+     * cannot stall the posting thread. In between, and until a subscriber has run once, the flag
+     * decides as usual.
+     * <p>Sync posts then no longer guarantee that expensive subscribers have run when
+     * {@code post} returns. Subscribers that are not thread-safe, bounded or conflated keep their
+     * queues and are never placed adaptively.
+     *
+     * @param inlineThreshold  the average execution time up to which subscribers run inline
+     * @param offloadThreshold the average execution time from which subscribers are offloaded,
+     *                         greater than {@code inlineThreshold}
+     * @param unit             the unit of both thresholds
+     */
+    public void enableAdaptiveDispatch(long inlineThreshold, long offloadThreshold, TimeUnit unit) {
+        executor.setAdaptiveThresholds(new HybridExecutor.AdaptiveThresholds(
+                unit.toNanos(inlineThreshold), unit.toNanos(offloadThreshold)));
+    }
+
+    /**
+     * Disables adaptive dispatch; the {@code sync} flag of each post alone decides again.
+     */
+    public void disableAdaptiveDispatch() {
+        executor.setAdaptiveThresholds(null);
+    }
+
+    /**
+     * Returns the metrics of this bus, or {@code null} while metrics are disabled.
+     *
+     * @return the metrics of this bus
+     */
+    @Nullable
+    public final EventBusMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns whether async events are delivered on virtual threads.
+     */
+    final boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Counts a synchronized delivery that pinned a virtual thread's carrier, logging
+     * {@code message} if not {@code null}.
+     */
+    void deliveryPinned(@Nullable String message) {
+        pinnedDeliveries.increment();
+        if (message != null) {
+            Logger logger = Logger.getLogger(EventBusImpl.class.getName() + "." + name);
+            if (logger.isLoggable(Level.WARNING)) {
+                logger.warning(message);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of deliveries to subscribers that are not thread-safe which pinned a
+     * virtual thread's carrier for at least 20 ms.
+     *
+     * @return the number of pinned deliveries
+     */
+    public long getPinnedDeliveryCount() {
+        return pinnedDeliveries.sum();
+    }
+
+    /**
+     * Counts an event on {@code subject} discarded by a bounded subscriber queue or bridge connection.
+     */
+    void eventDropped(String subject) {
+        EventBusMetrics.counter(droppedEvents, subject).increment();
+    }
+
+    /**
+     * Returns the number of async events on {@code subject} discarded by bounded subscriber queues.
+     * Subjects beyond the first {@value #MAX_COUNTED_SUBJECTS} are counted under
+     * {@value #OTHER_SUBJECTS}.
+     *
+     * @param subject the event subject
+     * @return the number of discarded events
+     */
+    public long getDroppedEventCount(String subject) {
+        LongAdder counter = droppedEvents.get(subject);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    /**
+     * Returns the number of async events discarded by bounded subscriber queues, indexed by subject.
+     */
+    ImmutableMap<String, Long> droppedEventCounts() {
+        return EventBusMetrics.sums(droppedEvents);
+    }
+
+    /**
+     * Returns the number of async events discarded by bounded subscriber queues on all subjects.
+     *
+     * @return the number of discarded events
+     */
+    public long getDroppedEventCount() {
+        long total = 0L;
+        for (LongAdder counter : droppedEvents.values()) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of posts on {@code subject} that had no subscribers. Subjects beyond the
+     * first {@value #MAX_COUNTED_SUBJECTS} are counted under {@value #OTHER_SUBJECTS}.
+     *
+     * @param subject the event subject
+     * @return the number of dead posts
+     */
+    public long getDeadEventCount(String subject) {
+        LongAdder counter = deadEvents.get(subject);
+        return counter == null ? 0L : counter.sum();
+    }
+
+    /**
+     * Returns the number of posts without subscribers, indexed by subject.
+     */
+    ImmutableMap<String, Long> deadEventCounts() {
+        return EventBusMetrics.sums(deadEvents);
+    }
+
+    /**
+     * Counts a post of {@code event} on {@code subject} that had no subscribers, and wraps it in a
+     * {@link DeadEvent} only if anyone subscribes to dead events.
+     */
+    private void deadEvent(String subject, Object event, boolean sync) {
+        EventBusMetrics.counter(deadEvents, subject).increment();
+        if (event instanceof DeadEvent) {
+            return;
+        }
+
+        Subscriber[] deadEventSubscribers = subscribers.getSubscribers(DEFAULT_SUBJECT, DeadEvent.class);
+        if (deadEventSubscribers.length > 0) {
+            dispatcher.dispatch(DEFAULT_SUBJECT, new DeadEvent(this, event), deadEventSubscribers, sync);
+        }
+    }
+
     /**
      * Handles the given exception thrown by a subscriber with the given context.
      */
@@ -89,6 +669,55 @@ public class EventBusImpl implements EventBus {
     @Override
     public void register(Object object) {
         subscribers.register(object);
+        subscriptionsChanged();
+        if (!stickySubjects.isEmpty()) {
+            deliverSticky(object);
+        }
+    }
+
+    /**
+     * Registers all subscriber methods on each of {@code objects}, publishing the new subscribers in
+     * one step. Much cheaper than registering thousands of listeners one at a time.
+     *
+     * @param objects objects whose subscriber methods should be registered.
+     */
+    @Override
+    public void registerAll(Iterable<?> objects) {
+        subscribers.registerAll(objects, false);
+        subscriptionsChanged();
+        if (!stickySubjects.isEmpty()) {
+            Set<Object> listeners = Sets.newIdentityHashSet();
+            Iterables.addAll(listeners, objects);
+            deliverSticky(listeners);
+        }
+    }
+
+    /**
+     * Registers all subscriber methods on {@code object} like {@link #register(Object)}, but without
+     * keeping {@code object} reachable. Once it is garbage collected its subscribers stop receiving
+     * events and are purged from the registry in the background, so listeners that are dropped
+     * without being unregistered cost neither memory nor dispatch time.
+     *
+     * @param object object whose subscriber methods should be registered.
+     * @see #getPurgedSubscriberCount()
+     */
+    @Override
+    public void registerWeakly(Object object) {
+        subscribers.register(object, true);
+        subscriptionsChanged();
+        if (!stickySubjects.isEmpty()) {
+            deliverSticky(object);
+        }
+    }
+
+    /**
+     * Returns the number of subscriber methods purged after their {@linkplain #registerWeakly(Object)
+     * weakly registered} listeners were garbage collected.
+     *
+     * @return the number of purged subscribers
+     */
+    public long getPurgedSubscriberCount() {
+        return subscribers.getPurgedCount();
     }
 
     @Override
@@ -99,8 +728,7 @@ public class EventBusImpl implements EventBus {
     @Override
     public <T extends EventListener> void register(Class<T> type, T listener, Condition condition) {
         Observer<T> observer = new Observer<>(type, listener, condition);
-        this.observers.register(type, observer);
-        this.register(observer);
+        this.observers.register(type, Subscriber.create(this, observer, Observer.ON_RECEIVE));
     }
 
     /**
@@ -112,39 +740,176 @@ public class EventBusImpl implements EventBus {
     @Override
     public void unregister(Object object) {
         subscribers.unregister(object);
+        subscriptionsChanged();
+    }
+
+    /**
+     * Unregisters all subscriber methods on each of {@code objects} in one step.
+     *
+     * @param objects objects whose subscriber methods should be unregistered.
+     * @throws IllegalArgumentException if one of the objects was not previously registered, in which
+     *                                  case none of them is unregistered.
+     */
+    @Override
+    public void unregisterAll(Iterable<?> objects) {
+        subscribers.unregisterAll(objects);
+        subscriptionsChanged();
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <T extends EventListener> void unregister(Class<T> type, T listener) {
-        Observer<?> observer = this.observers.lookupObserver(type, listener);
-        if (observer == null){
-            return;
-        }
-        this.unregister(observer);
-        this.observers.unregister(type, (Observer<T>) observer);
+        this.observers.unregister(type, listener);
     }
 
     @Override
     public void post(String subject, Object event, boolean sync) {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(subject), "Subject is required.");
-        Iterator<Subscriber> eventSubscribers = subscribers.getSubscribers(subject, event);
-        if (eventSubscribers.hasNext()) {
-            dispatcher.dispatch(event, eventSubscribers, sync);
-        } else if (!(event instanceof DeadEvent)) {
-            // the event had no subscribers and was not itself a DeadEvent
-            post(new DeadEvent(this, event), sync);
+        if (!sync) {
+            journal(subject, event);
+        }
+        forward(subject, event);
+        publish(subject, event, sync);
+    }
+
+    /**
+     * Delivers {@code event} to the subscribers of {@code subject}, without journaling it.
+     */
+    private void publish(String subject, Object event, boolean sync) {
+        EventBusMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.posted(subject);
+        }
+        retainSticky(subject, event);
+
+        Subscriber[] eventSubscribers = subscribers.getSubscribers(subject, event);
+        if (eventSubscribers.length > 0) {
+            dispatcher.dispatch(subject, event, eventSubscribers, sync);
+        } else {
+            deadEvent(subject, event, sync);
         }
     }
 
+    @Override
+    public CompletableFuture<Void> postAsync(String subject, Object event) {
+        return postTracked(subject, event, PostCompletion.NO_REPLIES).thenApply(replies -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> postAsync(Object event) {
+        return postAsync(DEFAULT_SUBJECT, event);
+    }
+
+    @Override
+    public CompletableFuture<List<Object>> request(String subject, Object event) {
+        return postTracked(subject, event, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public CompletableFuture<List<Object>> request(String subject, Object event, int maxReplies) {
+        Preconditions.checkArgument(maxReplies > 0, "maxReplies must be positive");
+        return postTracked(subject, event, maxReplies);
+    }
+
+    @Override
+    public CompletableFuture<Object> requestFirst(String subject, Object event) {
+        return postTracked(subject, event, 1).thenApply(replies -> replies.isEmpty() ? null : replies.get(0));
+    }
+
+    /**
+     * Posts {@code event} by async mode and returns a future of the first {@code maxReplies}
+     * replies, completing once every matched subscriber has run or enough replies arrived.
+     */
+    private CompletableFuture<List<Object>> postTracked(String subject, Object event, int maxReplies) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(subject), "Subject is required.");
+        Preconditions.checkNotNull(event);
+        EventBusMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.posted(subject);
+        }
+        retainSticky(subject, event);
+        journal(subject, event);
+        forward(subject, event);
+
+        Subscriber[] eventSubscribers = subscribers.getSubscribers(subject, event);
+        if (eventSubscribers.length == 0) {
+            deadEvent(subject, event, false);
+            return CompletableFuture.completedFuture(ImmutableList.of());
+        }
+
+        PostCompletion completion = new PostCompletion(event, eventSubscribers.length, maxReplies);
+        try {
+            dispatcher.dispatch(subject, completion, eventSubscribers, false);
+        } catch (RuntimeException e) {
+            completion.future.completeExceptionally(e);
+        }
+        return completion.future;
+    }
+
+    @Override
+    public void postAll(String subject, Collection<?> events, boolean sync) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(subject), "Subject is required.");
+        EventBusMetrics metrics = this.metrics;
+        Map<Class<?>, Subscriber[]> subscribersByClass = Maps.newHashMap();
+        List<Object> delivered = Lists.newArrayListWithCapacity(events.size());
+        List<Subscriber[]> deliveredSubscribers = Lists.newArrayListWithCapacity(events.size());
+        for (Object event : events) {
+            Preconditions.checkNotNull(event);
+            if (metrics != null) {
+                metrics.posted(subject);
+            }
+            retainSticky(subject, event);
+            if (!sync) {
+                journal(subject, event);
+            }
+            forward(subject, event);
+            Subscriber[] eventSubscribers = subscribersByClass.get(event.getClass());
+            if (eventSubscribers == null) {
+                eventSubscribers = subscribers.getSubscribers(subject, event);
+                subscribersByClass.put(event.getClass(), eventSubscribers);
+            }
+
+            if (eventSubscribers.length == 0) {
+                deadEvent(subject, event, sync);
+                continue;
+            }
+            delivered.add(event);
+            deliveredSubscribers.add(eventSubscribers);
+        }
+
+        if (!delivered.isEmpty()) {
+            dispatcher.dispatchAll(subject, delivered, deliveredSubscribers, sync);
+        }
+    }
+
+    @Override
+    public void postAll(String subject, Object[] events, boolean sync) {
+        postAll(subject, Arrays.asList(events), sync);
+    }
+
+    /**
+     * Notifies the listeners registered for exactly {@code type}. If there are none, the strategy is
+     * handled like any other dead event.
+     */
     @Override
     public <T extends EventListener> void post(Class<T> type, boolean sync, NotificationStrategy<T> strategy) {
-        post(Observer.SUBJECT, strategy, sync);
+        Preconditions.checkNotNull(type);
+        Preconditions.checkNotNull(strategy);
+        EventBusMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.posted(Observer.SUBJECT);
+        }
+
+        Subscriber[] typeObservers = observers.getObservers(type);
+        if (typeObservers.length > 0) {
+            dispatcher.dispatch(Observer.SUBJECT, strategy, typeObservers, sync);
+        } else {
+            deadEvent(Observer.SUBJECT, strategy, sync);
+        }
     }
 
     @Override
     public <T extends EventListener> void post(Class<T> type, NotificationStrategy<T> strategy) {
-        post(Observer.SUBJECT, strategy, true);
+        post(type, true, strategy);
     }
 
     @Override
@@ -161,8 +926,9 @@ public class EventBusImpl implements EventBus {
      * Posts an event to all registered subscribers. This method will return successfully after the
      * event has been posted to all subscribers, and regardless of any exceptions thrown by
      * subscribers.
-     * <p>If no subscribers have been subscribed for {@code event}'s class, and {@code event} is not
-     * already a {@link DeadEvent}, it will be wrapped in a DeadEvent and reposted.
+     * <p>If no subscribers have been subscribed for {@code event}'s class, the post is counted, see
+     * {@link #getDeadEventCount(String)}. Unless {@code event} is already a {@link DeadEvent}, it is
+     * then wrapped in a DeadEvent and delivered to the subscribers of dead events, if there are any.
      *
      * @param event event to post.
      */
@@ -182,6 +948,10 @@ public class EventBusImpl implements EventBus {
     static final class LoggingHandler implements SubscriberExceptionHandler {
         static final LoggingHandler INSTANCE = new LoggingHandler();
 
+        private static Logger logger(SubscriberExceptionContext context) {
+            return Logger.getLogger(EventBusImpl.class.getName() + "." + context.getEventBus().getName());
+        }
+
         private static String message(SubscriberExceptionContext context) {
             Method method = context.getSubscriberMethod();
             return "Exception thrown by subscriber method "
@@ -197,7 +967,10 @@ public class EventBusImpl implements EventBus {
 
         @Override
         public void handleException(Throwable exception, SubscriberExceptionContext context) {
-
+            Logger logger = logger(context);
+            if (logger.isLoggable(Level.SEVERE)) {
+                logger.log(Level.SEVERE, message(context), exception);
+            }
         }
     }
 }
@@ -0,0 +1,131 @@
+package eventbus;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.j2objc.annotations.Weak;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of one event bus, created by {@link EventBusImpl#enableMetrics()}.
+ * While metrics are disabled the bus only pays for a null check per post and per delivery.
+ *
+ * @author wuyongkang
+ */
+public final class EventBusMetrics {
+    @Weak
+    private final EventBusImpl bus;
+    /**
+     * Number of posts indexed by subject, for at most {@link EventBusImpl#MAX_COUNTED_SUBJECTS}
+     * subjects.
+     */
+    private final ConcurrentMap<String, LongAdder> posts = Maps.newConcurrentMap();
+    private final ConcurrentMap<String, SubscriberStats> subscribers = Maps.newConcurrentMap();
+
+    EventBusMetrics(EventBusImpl bus) {
+        this.bus = Preconditions.checkNotNull(bus);
+    }
+
+    void posted(String subject) {
+        counter(posts, subject).increment();
+    }
+
+    /**
+     * Returns the statistics of the subscriber method with the given name, creating them if needed.
+     */
+    SubscriberStats subscriberStats(String name) {
+        SubscriberStats stats = subscribers.get(name);
+        if (stats == null) {
+            SubscriberStats newStats = new SubscriberStats(this);
+            stats = MoreObjects.firstNonNull(subscribers.putIfAbsent(name, newStats), newStats);
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the counter of {@code subject}, or the shared {@link EventBusImpl#OTHER_SUBJECTS}
+     * counter once {@code counters} holds {@link EventBusImpl#MAX_COUNTED_SUBJECTS} subjects, so
+     * arbitrary subjects cannot grow it without bound.
+     */
+    static LongAdder counter(ConcurrentMap<String, LongAdder> counters, String subject) {
+        LongAdder counter = counters.get(subject);
+        if (counter == null) {
+            if (counters.size() >= EventBusImpl.MAX_COUNTED_SUBJECTS) {
+                subject = EventBusImpl.OTHER_SUBJECTS;
+                counter = counters.get(subject);
+                if (counter != null) {
+                    return counter;
+                }
+            }
+            LongAdder newCounter = new LongAdder();
+            counter = MoreObjects.firstNonNull(counters.putIfAbsent(subject, newCounter), newCounter);
+        }
+        return counter;
+    }
+
+    static ImmutableMap<String, Long> sums(Map<String, LongAdder> counters) {
+        ImmutableMap.Builder<String, Long> result = ImmutableMap.builder();
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return result.build();
+    }
+
+    /**
+     * Returns a point-in-time copy of all metrics. Counters are read one by one, so a snapshot taken
+     * under load is not atomic across counters.
+     *
+     * @return the current metrics
+     */
+    public MetricsSnapshot snapshot() {
+        ImmutableMap.Builder<String, MetricsSnapshot.SubscriberSnapshot> subscriberSnapshots =
+                ImmutableMap.builder();
+        for (Map.Entry<String, SubscriberStats> entry : subscribers.entrySet()) {
+            subscriberSnapshots.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return new MetricsSnapshot(
+                bus.getName(),
+                System.nanoTime(),
+                sums(posts),
+                bus.deadEventCounts(),
+                bus.droppedEventCounts(),
+                subscriberSnapshots.build());
+    }
+
+    /**
+     * Takes a snapshot and hands it to {@code reporter}.
+     *
+     * @param reporter the reporter to publish to
+     */
+    public void reportTo(MetricsReporter reporter) {
+        reporter.report(snapshot());
+    }
+
+    /**
+     * Statistics of one subscriber method, aggregated over all listener instances.
+     */
+    static final class SubscriberStats {
+        /**
+         * The metrics these statistics belong to, so subscribers can tell when metrics were
+         * re-enabled.
+         */
+        final EventBusMetrics owner;
+        final LongAdder invocations = new LongAdder();
+        final LongAdder exceptions = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+
+        private SubscriberStats(EventBusMetrics owner) {
+            this.owner = owner;
+        }
+
+        private MetricsSnapshot.SubscriberSnapshot snapshot() {
+            return new MetricsSnapshot.SubscriberSnapshot(
+                    invocations.sum(), exceptions.sum(), latency.snapshot(), queueWait.snapshot());
+        }
+    }
+}
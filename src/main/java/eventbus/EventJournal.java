@@ -0,0 +1,452 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of events, stored in memory-mapped segment files of a fixed size. Attach it to a
+ * bus with {@link EventBusImpl#setJournal(EventJournal)} to record every async post whose event type
+ * has a {@linkplain #registerSerializer(Class, EventSerializer) serializer}, and replay the log with
+ * {@link EventBusImpl#replayJournal(long)} or {@link #replay(long, ReplayHandler)} after a restart.
+ * <p>Events are serialized on the posting thread and written by a single writer thread, which
+ * copies every pending record into the mapped segment and then forces the segment to disk once per
+ * batch. {@link #flush()} waits until all records appended so far are durable.
+ * <p>A record is {@code [int length][int crc32][int subjectLength][subject][int typeLength][type]
+ * [payload]}, where the length, written last, covers everything after the crc. Records never span
+ * segments; the zero-filled rest of a segment marks its end. Each record is identified by its offset,
+ * the base offset of its segment plus its position in the segment.
+ *
+ * @author wuyongkang
+ */
+public final class EventJournal implements Closeable {
+    /**
+     * Default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_BATCH = 1024;
+    private static final Record CLOSE = new Record(new byte[0]);
+
+    /**
+     * Receives replayed events.
+     */
+    public interface ReplayHandler {
+        /**
+         * Called for each replayed record, in log order
+         *
+         * @param offset  the offset of the record
+         * @param subject the subject the event was posted on
+         * @param event   the deserialized event
+         */
+        void onEvent(long offset, String subject, Object event);
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ConcurrentMap<String, EventSerializer<Object>> serializers = Maps.newConcurrentMap();
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    /**
+     * Segment being written, and its base offset. Only accessed by the writer thread after opening.
+     */
+    private MappedByteBuffer segment;
+    private long segmentBase;
+    /**
+     * Offset just past the last written record; replay never reads beyond it.
+     */
+    private volatile long endOffset;
+    /**
+     * Number of records appended, and of those written and forced. Guarded by {@code this}.
+     */
+    private long appended;
+    private long durable;
+    private IOException failure;
+    private volatile boolean closed;
+
+    private EventJournal(Path directory, int segmentSize) throws IOException {
+        Preconditions.checkArgument(segmentSize > HEADER_SIZE, "segmentSize too small");
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        recover();
+        this.writer = new ThreadFactoryBuilder()
+                .setNameFormat("eventbus-journal-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(this::writeLoop);
+        writer.start();
+    }
+
+    /**
+     * Opens the journal in {@code directory} with {@linkplain #DEFAULT_SEGMENT_SIZE default} segments,
+     * creating it if needed.
+     *
+     * @param directory the directory holding the segment files
+     * @return the journal, positioned after its last complete record
+     * @throws IOException if the directory or a segment cannot be read or created
+     */
+    public static EventJournal open(Path directory) throws IOException {
+        return open(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed.
+     *
+     * @param directory   the directory holding the segment files
+     * @param segmentSize the size of segment files, the same every time the journal is opened; a
+     *                    record must fit in one segment
+     * @return the journal, positioned after its last complete record
+     * @throws IOException if the directory or a segment cannot be read or created
+     */
+    public static EventJournal open(Path directory, int segmentSize) throws IOException {
+        return new EventJournal(directory, segmentSize);
+    }
+
+    /**
+     * Registers the serializer of events of exactly {@code type}. Events of other types are not
+     * journaled.
+     *
+     * @param type       the event class
+     * @param serializer the serializer
+     * @param <T>        the event type
+     */
+    @SuppressWarnings("unchecked")
+    public <T> void registerSerializer(Class<T> type, EventSerializer<T> serializer) {
+        serializers.put(type.getName(), (EventSerializer<Object>) Preconditions.checkNotNull(serializer));
+    }
+
+    /**
+     * Returns whether events of {@code type} are journaled.
+     */
+    boolean canJournal(Class<?> type) {
+        return serializers.containsKey(type.getName());
+    }
+
+    /**
+     * Returns the offset just past the last record written so far.
+     *
+     * @return the end offset
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    /**
+     * Serializes {@code event} and queues it for the writer thread.
+     *
+     * @param subject the subject the event is posted on
+     * @param event   the event, whose type must have a serializer
+     * @throws IllegalArgumentException if the type has no serializer or the record exceeds a segment
+     * @throws UncheckedIOException     if the journal failed to write earlier records
+     */
+    public void append(String subject, Object event) {
+        String type = event.getClass().getName();
+        EventSerializer<Object> serializer = serializers.get(type);
+        Preconditions.checkArgument(serializer != null, "No serializer for %s", type);
+        byte[] subjectBytes = subject.getBytes(StandardCharsets.UTF_8);
+        byte[] typeBytes = type.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = serializer.serialize(event);
+
+        ByteBuffer body = ByteBuffer.allocate(8 + subjectBytes.length + typeBytes.length + payload.length);
+        body.putInt(subjectBytes.length).put(subjectBytes).putInt(typeBytes.length).put(typeBytes).put(payload);
+        Preconditions.checkArgument(HEADER_SIZE + body.capacity() <= segmentSize,
+                "Record of %s bytes does not fit in a segment", body.capacity());
+
+        synchronized (this) {
+            checkUsable();
+            appended++;
+            pending.add(new Record(body.array()));
+        }
+    }
+
+    /**
+     * Waits until every record appended before this call has been written and forced to disk.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     * @throws UncheckedIOException if the journal failed to write
+     */
+    public synchronized void flush() throws InterruptedException {
+        long target = appended;
+        while (durable < target) {
+            checkUsable();
+            wait();
+        }
+        checkUsable();
+    }
+
+    private void checkUsable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+    }
+
+    /**
+     * Replays the records from {@code fromOffset}, which must be the offset of a record or the end
+     * offset of an earlier replay, up to the current end of the journal.
+     *
+     * @param fromOffset the offset to start at, {@code 0} for the whole journal
+     * @param handler    receives the replayed events
+     * @return the offset just past the last replayed record
+     * @throws IOException if a segment cannot be read
+     */
+    public long replay(long fromOffset, ReplayHandler handler) throws IOException {
+        long end = endOffset;
+        long offset = fromOffset;
+        for (long base : segmentBases()) {
+            if (offset >= end) {
+                break;
+            }
+            if (base + segmentSize <= offset) {
+                continue;
+            }
+            offset = Math.max(offset, base);
+            try (FileChannel channel = FileChannel.open(segmentPath(base))) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int position = (int) (offset - base);
+                byte[] body;
+                while (base + position < end && (body = readRecord(buffer, position)) != null) {
+                    replayRecord(body, base + position, handler);
+                    position += HEADER_SIZE + body.length;
+                }
+                offset = base + position;
+            }
+            if (offset < end) {
+                // rest of the segment is unused, continue at the next one
+                offset = base + segmentSize;
+            }
+        }
+        return Math.min(offset, end);
+    }
+
+    private void replayRecord(byte[] body, long offset, ReplayHandler handler) {
+        ByteBuffer record = ByteBuffer.wrap(body);
+        String subject = readString(record);
+        String type = readString(record);
+        byte[] payload = new byte[record.remaining()];
+        record.get(payload);
+        EventSerializer<Object> serializer = serializers.get(type);
+        if (serializer == null) {
+            throw new IllegalStateException("No serializer for journaled " + type + " at offset " + offset);
+        }
+        handler.onEvent(offset, subject, serializer.deserialize(payload));
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the body of the complete record at {@code position}, or {@code null} if there is none
+     * because the segment ends there or the record was torn by a crash.
+     */
+    @Nullable
+    private static byte[] readRecord(ByteBuffer buffer, int position) {
+        if (position + HEADER_SIZE > buffer.limit()) {
+            return null;
+        }
+        int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.limit() - position - HEADER_SIZE) {
+            return null;
+        }
+        byte[] body = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(position + HEADER_SIZE);
+        source.get(body);
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, length);
+        return (int) crc.getValue() == buffer.getInt(position + 4) ? body : null;
+    }
+
+    /**
+     * Stops accepting records, writes the pending ones and releases the writer thread.
+     *
+     * @throws IOException            if the pending records could not be written
+     * @throws InterruptedIOException if interrupted before the writer thread finished
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                pending.add(CLOSE);
+            }
+        }
+        // closing again after an interrupted close waits for the writer once more
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while the journal writer was still running");
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            writeRecords();
+        } catch (IOException e) {
+            fail(e);
+        } catch (Throwable e) {
+            // MappedByteBuffer.force reports I/O errors unchecked, and a mapped segment whose file
+            // shrank faults with an InternalError, possibly raised a little after the faulting write
+            fail(e instanceof UncheckedIOException ? ((UncheckedIOException) e).getCause()
+                    : new IOException("Journal writer failed", e));
+        }
+    }
+
+    private void writeRecords() throws IOException {
+        List<Record> batch = Lists.newArrayListWithCapacity(MAX_BATCH);
+        while (true) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+
+            boolean closing = false;
+            int written = 0;
+            for (Record record : batch) {
+                if (record == CLOSE) {
+                    closing = true;
+                } else {
+                    write(record.body);
+                    written++;
+                }
+            }
+            segment.force();
+            batch.clear();
+
+            synchronized (this) {
+                durable += written;
+                notifyAll();
+            }
+            if (closing) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Records the failure that stopped the writer thread, failing waiting and later callers instead
+     * of letting records pile up for a writer that is gone.
+     */
+    private synchronized void fail(IOException e) {
+        failure = e;
+        pending.clear();
+        notifyAll();
+    }
+
+    private void write(byte[] body) throws IOException {
+        if (segment.remaining() < HEADER_SIZE + body.length) {
+            segment.force();
+            openSegment(segmentBase + segmentSize, 0);
+        }
+        int position = segment.position();
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        segment.position(position + HEADER_SIZE);
+        segment.put(body);
+        segment.putInt(position + 4, (int) crc.getValue());
+        // the length goes last, so a torn record reads as the end of the log
+        segment.putInt(position, body.length);
+        endOffset = segmentBase + segment.position();
+    }
+
+    /**
+     * Positions the writer after the last complete record of the newest segment.
+     */
+    private void recover() throws IOException {
+        List<Long> bases = segmentBases();
+        if (bases.isEmpty()) {
+            openSegment(0L, 0);
+            return;
+        }
+
+        long base = bases.get(bases.size() - 1);
+        openSegment(base, 0);
+        int position = 0;
+        byte[] body;
+        while ((body = readRecord(segment, position)) != null) {
+            position += HEADER_SIZE + body.length;
+        }
+        // clear a torn tail so it cannot be mistaken for a record later
+        for (int i = position; i < Math.min(position + HEADER_SIZE, segment.limit()); i++) {
+            segment.put(i, (byte) 0);
+        }
+        segment.position(position);
+        endOffset = base + position;
+    }
+
+    private void openSegment(long base, int position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segmentPath(base).toFile(), "rw")) {
+            if (file.length() < segmentSize) {
+                file.setLength(segmentSize);
+            }
+            // the mapping stays valid after the channel is closed
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.position(position);
+        segmentBase = base;
+        endOffset = base + position;
+    }
+
+    private Path segmentPath(long base) {
+        return directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private List<Long> segmentBases() throws IOException {
+        List<Long> bases = Lists.newArrayList();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                bases.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+            }
+        }
+        Collections.sort(bases);
+        return bases;
+    }
+
+    /**
+     * Serialized record body waiting for the writer thread.
+     */
+    private static final class Record {
+        private final byte[] body;
+
+        private Record(byte[] body) {
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package eventbus;
+
+/**
+ * Converts events of one type to and from the bytes stored in an {@link EventJournal} or sent by an
+ * {@link EventBusBridge}.
+ *
+ * @param <T> the event type
+ * @author wuyongkang
+ */
+public interface EventSerializer<T> {
+    /**
+     * Serializes the event
+     *
+     * @param event the event to serialize
+     * @return the serialized event
+     */
+    byte[] serialize(T event);
+
+    /**
+     * Deserializes an event written by {@link #serialize(Object)}
+     *
+     * @param bytes the serialized event
+     * @return the event
+     */
+    T deserialize(byte[] bytes);
+}
@@ -3,29 +3,163 @@ package eventbus;
 import com.google.common.base.Preconditions;
 import com.google.common.util.concurrent.MoreExecutors;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Hybrid Executor
+ * <p>Async tasks go straight to the async executor until the first task with a non-zero priority
+ * arrives. From then on every async task is queued by priority, and the async executor only receives
+ * tasks that run the highest-priority pending task, so prioritized deliveries overtake bulk ones no
+ * matter how the async executor orders its own queue.
+ * <p>In adaptive mode the caller's {@code sync} flag becomes a hint: subscribers whose average
+ * execution time is at most the inline threshold run on the sync executor, those at or above the
+ * offload threshold run on the async executor, and the flag decides in between.
  *
  * @author wuyongkang
  */
 class HybridExecutor {
     private Executor syncExecutor;
     private Executor asyncExecutor;
+    private final PriorityBlockingQueue<PrioritizedTask> prioritized = new PriorityBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Runnable runHighest = this::runHighest;
+    private volatile boolean usePriorities;
+    /**
+     * Whether sync commands run on the calling thread, so callers may skip wrapping them.
+     */
+    private final boolean directSync;
+    /**
+     * Thresholds of adaptive mode, or {@code null} while it is disabled.
+     */
+    @Nullable
+    private volatile AdaptiveThresholds adaptive;
 
     HybridExecutor(Executor asyncExecutor) {
-        this.syncExecutor = MoreExecutors.directExecutor();
-        this.asyncExecutor = Preconditions.checkNotNull(asyncExecutor);
+        this(MoreExecutors.directExecutor(), asyncExecutor);
     }
 
     public HybridExecutor(Executor syncExecutor, Executor asyncExecutor) {
         this.syncExecutor = Preconditions.checkNotNull(syncExecutor);
         this.asyncExecutor = Preconditions.checkNotNull(asyncExecutor);
+        this.directSync = syncExecutor == MoreExecutors.directExecutor();
+    }
+
+    /**
+     * Returns whether sync commands run directly on the calling thread.
+     */
+    boolean isDirectSync() {
+        return directSync;
+    }
+
+    /**
+     * Enables adaptive mode with the given thresholds, or disables it if {@code null}.
+     */
+    void setAdaptiveThresholds(@Nullable AdaptiveThresholds adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    boolean isAdaptive() {
+        return adaptive != null;
+    }
+
+    /**
+     * Returns whether a delivery requested with {@code sync} should go to the sync executor, given
+     * the subscriber's average execution time, negative while unknown.
+     */
+    boolean runSync(boolean sync, long averageNanos) {
+        AdaptiveThresholds adaptive = this.adaptive;
+        if (adaptive == null || averageNanos < 0) {
+            return sync;
+        }
+        if (averageNanos <= adaptive.inlineNanos) {
+            return true;
+        }
+        return averageNanos < adaptive.offloadNanos && sync;
+    }
+
+    /**
+     * Folds {@code sampleNanos} into the decaying average {@code averageNanos}, giving the new
+     * sample a weight of 1/8 so a subscriber whose cost changes is reclassified within a few
+     * deliveries.
+     */
+    static long decay(long averageNanos, long sampleNanos) {
+        return averageNanos < 0 ? sampleNanos : averageNanos + ((sampleNanos - averageNanos) >> 3);
     }
 
     void execute(Runnable command, boolean sync) {
-        Executor executor = sync ? syncExecutor : asyncExecutor;
-        executor.execute(command);
+        execute(command, sync, 0);
+    }
+
+    /**
+     * Executes {@code command}; async commands with a higher {@code priority} run first.
+     */
+    void execute(Runnable command, boolean sync, int priority) {
+        if (sync) {
+            syncExecutor.execute(command);
+            return;
+        }
+        if (priority != 0 && !usePriorities) {
+            usePriorities = true;
+        }
+        if (!usePriorities) {
+            asyncExecutor.execute(command);
+            return;
+        }
+
+        PrioritizedTask task = new PrioritizedTask(command, priority, sequence.getAndIncrement());
+        prioritized.add(task);
+        try {
+            asyncExecutor.execute(runHighest);
+        } catch (RuntimeException e) {
+            prioritized.remove(task);
+            throw e;
+        }
+    }
+
+    private void runHighest() {
+        PrioritizedTask task = prioritized.poll();
+        if (task != null) {
+            task.command.run();
+        }
+    }
+
+    /**
+     * Execution times separating subscribers run inline from those offloaded.
+     */
+    static final class AdaptiveThresholds {
+        private final long inlineNanos;
+        private final long offloadNanos;
+
+        AdaptiveThresholds(long inlineNanos, long offloadNanos) {
+            Preconditions.checkArgument(inlineNanos >= 0, "inline threshold must not be negative");
+            Preconditions.checkArgument(offloadNanos > inlineNanos,
+                    "offload threshold must be above the inline threshold");
+            this.inlineNanos = inlineNanos;
+            this.offloadNanos = offloadNanos;
+        }
+    }
+
+    /**
+     * Async task ordered by descending priority, then by submission.
+     */
+    private static final class PrioritizedTask implements Comparable<PrioritizedTask> {
+        private final Runnable command;
+        private final int priority;
+        private final long sequence;
+
+        private PrioritizedTask(Runnable command, int priority, long sequence) {
+            this.command = command;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask that) {
+            int result = Integer.compare(that.priority, priority);
+            return result != 0 ? result : Long.compare(sequence, that.sequence);
+        }
     }
 }
@@ -0,0 +1,16 @@
+package eventbus;
+
+/**
+ * Receives {@link MetricsSnapshot}s of an event bus, for example to publish them to a monitoring
+ * system.
+ *
+ * @author wuyongkang
+ */
+public interface MetricsReporter {
+    /**
+     * Reports a snapshot.
+     *
+     * @param snapshot the metrics of an event bus at one point in time
+     */
+    void report(MetricsSnapshot snapshot);
+}
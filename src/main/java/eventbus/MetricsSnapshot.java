@@ -0,0 +1,226 @@
+package eventbus;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-in-time copy of the {@link EventBusMetrics} of one event bus.
+ *
+ * @author wuyongkang
+ */
+public final class MetricsSnapshot {
+    private final String busName;
+    private final long nanoTime;
+    private final ImmutableMap<String, Long> posts;
+    private final ImmutableMap<String, Long> deadEvents;
+    private final ImmutableMap<String, Long> droppedEvents;
+    private final ImmutableMap<String, SubscriberSnapshot> subscribers;
+
+    MetricsSnapshot(
+            String busName,
+            long nanoTime,
+            ImmutableMap<String, Long> posts,
+            ImmutableMap<String, Long> deadEvents,
+            ImmutableMap<String, Long> droppedEvents,
+            ImmutableMap<String, SubscriberSnapshot> subscribers) {
+        this.busName = busName;
+        this.nanoTime = nanoTime;
+        this.posts = posts;
+        this.deadEvents = deadEvents;
+        this.droppedEvents = droppedEvents;
+        this.subscribers = subscribers;
+    }
+
+    /**
+     * @return the name of the event bus
+     */
+    public String getBusName() {
+        return busName;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the snapshot was taken
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /**
+     * @return the number of events posted, indexed by subject, with subjects beyond the first 4096
+     * counted under {@code event.subject.other}
+     */
+    public ImmutableMap<String, Long> getPosts() {
+        return posts;
+    }
+
+    /**
+     * Returns the post rate of {@code subject} between {@code previous} and this snapshot.
+     *
+     * @param previous an earlier snapshot of the same bus
+     * @param subject  the event subject
+     * @return the number of posts per second
+     */
+    public double getPostRate(MetricsSnapshot previous, String subject) {
+        Preconditions.checkArgument(previous.nanoTime < nanoTime, "previous snapshot must be older");
+        long delta = posts.getOrDefault(subject, 0L) - previous.posts.getOrDefault(subject, 0L);
+        return delta * (double) TimeUnit.SECONDS.toNanos(1) / (nanoTime - previous.nanoTime);
+    }
+
+    /**
+     * @return the number of events that had no subscriber, indexed by subject, with subjects beyond
+     * the first 4096 counted under {@code event.subject.other}
+     */
+    public ImmutableMap<String, Long> getDeadEvents() {
+        return deadEvents;
+    }
+
+    /**
+     * @return the number of async events discarded by bounded subscriber queues, indexed by subject,
+     * with subjects beyond the first 4096 counted under {@code event.subject.other}
+     */
+    public ImmutableMap<String, Long> getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * @return the subscriber statistics, indexed by {@code ListenerClass#method(EventType)}
+     */
+    public ImmutableMap<String, SubscriberSnapshot> getSubscribers() {
+        return subscribers;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("bus", busName)
+                .add("posts", posts)
+                .add("deadEvents", deadEvents)
+                .add("droppedEvents", droppedEvents)
+                .add("subscribers", subscribers)
+                .toString();
+    }
+
+    /**
+     * Statistics of one subscriber method, aggregated over all listener instances.
+     */
+    public static final class SubscriberSnapshot {
+        private final long invocations;
+        private final long exceptions;
+        private final HistogramSnapshot latency;
+        private final HistogramSnapshot queueWait;
+
+        SubscriberSnapshot(long invocations, long exceptions, HistogramSnapshot latency, HistogramSnapshot queueWait) {
+            this.invocations = invocations;
+            this.exceptions = exceptions;
+            this.latency = latency;
+            this.queueWait = queueWait;
+        }
+
+        /**
+         * @return the number of completed invocations
+         */
+        public long getInvocations() {
+            return invocations;
+        }
+
+        /**
+         * @return the number of invocations that threw
+         */
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        /**
+         * @return the execution time of the subscriber method in nanoseconds
+         */
+        public HistogramSnapshot getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the time async deliveries waited in the executor queue in nanoseconds
+         */
+        public HistogramSnapshot getQueueWait() {
+            return queueWait;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("invocations", invocations)
+                    .add("exceptions", exceptions)
+                    .add("latency", latency)
+                    .add("queueWait", queueWait)
+                    .toString();
+        }
+    }
+
+    /**
+     * Point-in-time copy of a latency histogram.
+     */
+    public static final class HistogramSnapshot {
+        private final long[] counts;
+        private final long count;
+
+        HistogramSnapshot(long[] counts) {
+            this.counts = counts;
+            long total = 0L;
+            for (long c : counts) {
+                total += c;
+            }
+            this.count = total;
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns an upper bound of the value below which {@code percentile} percent of the recorded
+         * values fall, or {@code 0} if nothing was recorded.
+         *
+         * @param percentile a percentile in {@code (0, 100]}
+         * @return the percentile value in nanoseconds
+         */
+        public long getPercentile(double percentile) {
+            Preconditions.checkArgument(percentile > 0 && percentile <= 100, "percentile out of range");
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return LatencyHistogram.upperBoundOf(i);
+                }
+            }
+            return 0L;
+        }
+
+        public long getP50() {
+            return getPercentile(50);
+        }
+
+        public long getP99() {
+            return getPercentile(99);
+        }
+
+        public long getP999() {
+            return getPercentile(99.9);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                    .add("count", count)
+                    .add("p50", getP50())
+                    .add("p99", getP99())
+                    .add("p999", getP999())
+                    .toString();
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package eventbus;
 
+import java.lang.reflect.Method;
 import java.util.EventListener;
 
 /**
@@ -9,6 +10,10 @@ import java.util.EventListener;
  */
 final class Observer<T extends EventListener> {
     static final String SUBJECT = "cn.elibot.robot.eventbus.__notification__";
+    /**
+     * The method notifications are delivered to.
+     */
+    static final Method ON_RECEIVE = onReceiveMethod();
 
     private final Class<T> type;
     private final Object listener;
@@ -29,6 +34,14 @@ final class Observer<T extends EventListener> {
         }
     }
 
+    private static Method onReceiveMethod() {
+        try {
+            return Observer.class.getMethod("onReceive", NotificationStrategy.class);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
     public Class<T> getType() {
         return type;
     }
@@ -2,52 +2,69 @@ package eventbus;
 
 import com.google.common.collect.Maps;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EventListener;
-import java.util.List;
 import java.util.concurrent.ConcurrentMap;
 
 /**
  * Broadcaster Registry
+ * <p>Observers are indexed by listener type. Each type maps to an immutable snapshot array that is
+ * replaced on every change, so a notification reads its observers without locking and only fans out
+ * to the listeners of its own type.
  *
  * @author wuyongkang
  */
 final class ObserverRegistry {
-    private final ConcurrentMap<Class<? extends EventListener>, List<Observer<?>>> subscribers =
-            Maps.newConcurrentMap();
+    private static final Subscriber[] NO_OBSERVERS = new Subscriber[0];
 
-    public <T extends EventListener> void register(Class<T> type, Observer<T> observer) {
-        List<Observer<?>> observers = subscribers.getOrDefault(type, null);
-        if (observers == null) {
-            observers = new ArrayList<>();
-            subscribers.put(type, observers);
-        }
+    /**
+     * Subscribers wrapping an {@link Observer}, indexed by listener type.
+     */
+    private final ConcurrentMap<Class<? extends EventListener>, Subscriber[]> subscribers =
+            Maps.newConcurrentMap();
 
-        observers.add(observer);
+    public void register(Class<? extends EventListener> type, Subscriber observer) {
+        subscribers.compute(type, (key, observers) -> {
+            if (observers == null) {
+                return new Subscriber[]{observer};
+            }
+            Subscriber[] result = Arrays.copyOf(observers, observers.length + 1);
+            result[observers.length] = observer;
+            return result;
+        });
     }
 
-    public <T extends EventListener> void unregister(Class<T> type, Observer<T> observer) {
-        List<Observer<?>> observers = subscribers.getOrDefault(type, null);
-        if (observers != null) {
-            boolean removed = observers.remove(observer);
-            if (removed && observers.isEmpty()) {
-                subscribers.remove(type);
+    public <T extends EventListener> void unregister(Class<T> type, T listener) {
+        subscribers.computeIfPresent(type, (key, observers) -> {
+            int index = indexOf(observers, listener);
+            if (index < 0) {
+                return observers;
             }
-        }
+            if (observers.length == 1) {
+                return null;
+            }
+            Subscriber[] result = new Subscriber[observers.length - 1];
+            System.arraycopy(observers, 0, result, 0, index);
+            System.arraycopy(observers, index + 1, result, index, result.length - index);
+            return result;
+        });
     }
 
-    public <T extends EventListener> Observer<?> lookupObserver(Class<T> type, T listener) {
-        List<Observer<?>> observers = subscribers.getOrDefault(type, null);
-        if (observers == null) {
-            return null;
-        }
+    /**
+     * Returns the current observers of listeners of exactly {@code type}; the array must not be
+     * modified.
+     */
+    Subscriber[] getObservers(Class<? extends EventListener> type) {
+        Subscriber[] observers = subscribers.get(type);
+        return observers == null ? NO_OBSERVERS : observers;
+    }
 
-        for (Observer<?> observer : observers) {
-            if (observer.getListener() == listener) {
-                return observer;
+    private static int indexOf(Subscriber[] observers, Object listener) {
+        for (int i = 0; i < observers.length; i++) {
+            if (((Observer<?>) observers[i].getTarget()).getListener() == listener) {
+                return i;
             }
         }
-
-        return null;
+        return -1;
     }
 }
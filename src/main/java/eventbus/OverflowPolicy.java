@@ -0,0 +1,28 @@
+package eventbus;
+
+/**
+ * What an async post does when a subscriber's bounded queue is full.
+ *
+ * @author wuyongkang
+ * @see EventBusImpl#EventBusImpl(String, java.util.concurrent.Executor, int, OverflowPolicy)
+ */
+public enum OverflowPolicy {
+    /**
+     * Block the posting thread until the subscriber has room.
+     */
+    BLOCK,
+    /**
+     * Discard the event being posted.
+     */
+    DROP_NEWEST,
+    /**
+     * Discard the oldest queued event to make room for the one being posted.
+     */
+    DROP_OLDEST,
+    /**
+     * Deliver the event on the posting thread, bypassing the queue. For a subscriber that is not
+     * thread-safe the posting thread delivers the oldest queued events instead until the event
+     * fits, so delivery stays serial and in order.
+     */
+    CALLER_RUNS
+}
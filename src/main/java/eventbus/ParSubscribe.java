@@ -13,4 +13,8 @@ import java.lang.annotation.Target;
 @Subscribe
 @AllowConcurrentEvents
 public @interface ParSubscribe {
+    /**
+     * Delivery priority, ordered as described for {@link Subscribe#priority()}.
+     */
+    int priority() default 0;
 }
@@ -0,0 +1,106 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the deliveries of one {@link EventBus#postAsync(String, Object)} or
+ * {@link EventBus#request(String, Object, int)}, collects the replies of the subscribers and
+ * completes its future once every matched subscriber has run, or as soon as enough replies arrived.
+ * <p>The posted event travels through the dispatcher and the subscriber queues wrapped in this
+ * object, and is unwrapped right before the subscriber method is invoked.
+ *
+ * @author wuyongkang
+ */
+final class PostCompletion {
+    /**
+     * Maximum number of replies of a post that only waits for delivery.
+     */
+    static final int NO_REPLIES = 0;
+
+    final Object event;
+    final CompletableFuture<List<Object>> future = new CompletableFuture<>();
+    private final int subscribers;
+    private final int maxReplies;
+    private final AtomicInteger remaining;
+    /**
+     * Non-null replies, in arrival order. Guarded by {@code this}.
+     */
+    private final List<Object> replies;
+    /**
+     * Failed deliveries, in completion order. Guarded by {@code this}.
+     */
+    private final Map<SubscriberExceptionContext, Throwable> failures = Maps.newLinkedHashMap();
+
+    /**
+     * @param event       the posted event
+     * @param subscribers the number of subscribers the event is dispatched to
+     * @param maxReplies  the number of replies after which the future completes early
+     */
+    PostCompletion(Object event, int subscribers, int maxReplies) {
+        Preconditions.checkArgument(subscribers > 0);
+        Preconditions.checkArgument(maxReplies >= 0);
+        this.event = Preconditions.checkNotNull(event);
+        this.subscribers = subscribers;
+        this.maxReplies = maxReplies;
+        this.remaining = new AtomicInteger(subscribers);
+        this.replies = maxReplies == NO_REPLIES ? ImmutableList.of() : Lists.newArrayList();
+    }
+
+    /**
+     * Returns the posted event, unwrapping it if it is tracked by a {@code PostCompletion}.
+     */
+    static Object unwrap(Object event) {
+        return event instanceof PostCompletion ? ((PostCompletion) event).event : event;
+    }
+
+    /**
+     * Records that one subscriber is done with the event, and completes the future after the last
+     * one or once {@code maxReplies} replies arrived. The future fails with a
+     * {@link SubscriberFailureException} if any subscriber failed before it completed.
+     *
+     * @param context the failed delivery, or {@code null} if it succeeded
+     * @param failure the failure of the delivery, or {@code null} if it succeeded
+     * @param reply   the value returned by the subscriber, or {@code null} if there is none
+     */
+    void completed(@Nullable SubscriberExceptionContext context, @Nullable Throwable failure, @Nullable Object reply) {
+        ImmutableList<Object> enough = null;
+        synchronized (this) {
+            if (failure != null) {
+                failures.put(Preconditions.checkNotNull(context), failure);
+            } else if (reply != null && replies.size() < maxReplies) {
+                replies.add(reply);
+                if (replies.size() == maxReplies) {
+                    enough = ImmutableList.copyOf(replies);
+                }
+            }
+        }
+        if (enough != null) {
+            future.complete(enough);
+        }
+        if (remaining.decrementAndGet() != 0 || future.isDone()) {
+            return;
+        }
+
+        ImmutableMap<SubscriberExceptionContext, Throwable> failed;
+        ImmutableList<Object> result;
+        synchronized (this) {
+            failed = ImmutableMap.copyOf(failures);
+            result = ImmutableList.copyOf(replies);
+        }
+        if (failed.isEmpty()) {
+            future.complete(result);
+        } else {
+            future.completeExceptionally(new SubscriberFailureException(failed, subscribers));
+        }
+    }
+}
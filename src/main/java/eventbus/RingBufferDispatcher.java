@@ -0,0 +1,377 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Async dispatcher backed by a preallocated, power-of-two ring of (event, subscriber) slots that is
+ * drained by a fixed set of consumer threads. Posting claims one slot per subscriber and never
+ * allocates, so steady-state async dispatch produces no garbage. An event with more subscribers than
+ * the ring has slots is published in ring-sized chunks, each waiting for room.
+ * <p>Only subscribers without an async lane go through the ring, since its consumers deliver in
+ * parallel. Serial, bounded and conflating subscribers get the event added to their lane on the
+ * posting thread, which keeps their ordering, bound and conflation.
+ * <p>Select it with {@link EventBusImpl#EventBusImpl(String, java.util.concurrent.Executor,
+ * RingBufferDispatcher)}; sync posts keep using the per-thread queued dispatcher. Call
+ * {@link #shutdown()} to stop the consumer threads.
+ *
+ * @author wuyongkang
+ */
+public final class RingBufferDispatcher extends AbstractDispatcher {
+    /**
+     * How many threads may publish into the ring.
+     */
+    public enum ProducerType {
+        /**
+         * Only one thread ever posts asynchronously; claiming a slot is a plain field update. The
+         * first thread to post owns the ring, and a post from any other thread, such as a bridge's
+         * event loop or a journal replay, fails with {@link IllegalStateException}.
+         */
+        SINGLE,
+        /**
+         * Any thread may post; slots are claimed with a CAS on the cursor.
+         */
+        MULTI
+    }
+
+    /**
+     * What a consumer does while the ring is empty.
+     */
+    public enum WaitStrategy {
+        /**
+         * Spin without backing off. Lowest latency, burns a core per consumer.
+         */
+        BUSY_SPIN {
+            @Override
+            void idle(int counter) {
+            }
+        },
+        /**
+         * Spin briefly, then {@link Thread#yield()}.
+         */
+        YIELD {
+            @Override
+            void idle(int counter) {
+                if (counter > SPIN_TRIES) {
+                    Thread.yield();
+                }
+            }
+        },
+        /**
+         * Spin, yield, then park for a short period. Cheapest on CPU, highest wake-up latency.
+         */
+        PARK {
+            @Override
+            void idle(int counter) {
+                if (counter > SPIN_TRIES * 2) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                } else if (counter > SPIN_TRIES) {
+                    Thread.yield();
+                }
+            }
+        };
+
+        private static final int SPIN_TRIES = 100;
+        private static final long PARK_NANOS = 100L;
+
+        /**
+         * Called repeatedly while no slot is available; {@code counter} counts the calls since the
+         * last successful read.
+         */
+        abstract void idle(int counter);
+    }
+
+    private final int mask;
+    private final int indexShift;
+    private final Object[] events;
+    private final Subscriber[] subscribers;
+    private final ProducerType producerType;
+    private final WaitStrategy waitStrategy;
+    /**
+     * Highest claimed sequence. For {@link ProducerType#SINGLE} it is also the highest published one.
+     */
+    private final AtomicLong cursor = new AtomicLong(-1L);
+    /**
+     * Publication round of each slot, only used by {@link ProducerType#MULTI}.
+     */
+    private final AtomicIntegerArray published;
+    /**
+     * Highest sequence claimed by any consumer.
+     */
+    private final AtomicLong workSequence = new AtomicLong(-1L);
+    private final Consumer[] consumers;
+    /**
+     * Number of consumer threads that have not yet stopped after {@link #shutdown()}.
+     */
+    private final AtomicInteger liveConsumers;
+    /**
+     * Cached minimum consumer sequence, so producers rarely need to scan all consumers.
+     */
+    private final AtomicLong gatingCache = new AtomicLong(-1L);
+    /**
+     * Next sequence to claim, only used by {@link ProducerType#SINGLE}.
+     */
+    private long singleProducerNext = -1L;
+    /**
+     * The thread that claimed first, the only one allowed to claim for {@link ProducerType#SINGLE}.
+     */
+    private final AtomicReference<Thread> singleProducer = new AtomicReference<>();
+    private volatile boolean running = true;
+
+    private RingBufferDispatcher(
+            int bufferSize, int consumerCount, ProducerType producerType, WaitStrategy waitStrategy) {
+        Preconditions.checkArgument(Integer.bitCount(bufferSize) == 1, "bufferSize must be a power of 2");
+        Preconditions.checkArgument(consumerCount > 0, "consumerCount must be positive");
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.events = new Object[bufferSize];
+        this.subscribers = new Subscriber[bufferSize];
+        this.producerType = Preconditions.checkNotNull(producerType);
+        this.waitStrategy = Preconditions.checkNotNull(waitStrategy);
+        this.published = producerType == ProducerType.MULTI ? newPublishedFlags(bufferSize) : null;
+
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("eventbus-ring-%d")
+                .setDaemon(true)
+                .build();
+        this.liveConsumers = new AtomicInteger(consumerCount);
+        this.consumers = new Consumer[consumerCount];
+        for (int i = 0; i < consumerCount; i++) {
+            consumers[i] = new Consumer();
+        }
+        for (Consumer consumer : consumers) {
+            threadFactory.newThread(consumer).start();
+        }
+    }
+
+    /**
+     * Creates a ring buffer dispatcher and starts its consumer threads.
+     *
+     * @param bufferSize    the number of slots, must be a power of two
+     * @param consumerCount the number of consumer threads
+     * @param producerType  whether one or many threads post asynchronously
+     * @param waitStrategy  what consumers do while the ring is empty
+     * @return a new ring buffer dispatcher
+     */
+    public static RingBufferDispatcher create(
+            int bufferSize, int consumerCount, ProducerType producerType, WaitStrategy waitStrategy) {
+        return new RingBufferDispatcher(bufferSize, consumerCount, producerType, waitStrategy);
+    }
+
+    private static AtomicIntegerArray newPublishedFlags(int bufferSize) {
+        AtomicIntegerArray flags = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            flags.set(i, -1);
+        }
+        return flags;
+    }
+
+    /**
+     * Stops the consumer threads once they finish their current delivery. Events still in the ring
+     * are dropped, completing the futures of tracked posts exceptionally, and later posts are rejected.
+     */
+    public void shutdown() {
+        running = false;
+    }
+
+    /**
+     * Clears every slot left in the ring once all consumers have stopped, failing tracked posts with
+     * a {@link RejectedExecutionException}.
+     */
+    private synchronized void discardAbandoned() {
+        // reading the cursor makes the slots written before its last update visible
+        cursor.get();
+        for (int index = 0; index < events.length; index++) {
+            Object event = events[index];
+            if (event instanceof PostCompletion) {
+                ((PostCompletion) event).future.completeExceptionally(
+                        new RejectedExecutionException("Ring buffer dispatcher has been shut down"));
+            }
+            events[index] = null;
+            subscribers[index] = null;
+        }
+    }
+
+    private void checkRunning() {
+        if (!running) {
+            throw new RejectedExecutionException("Ring buffer dispatcher has been shut down");
+        }
+    }
+
+    @Override
+    void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync) {
+        Preconditions.checkNotNull(event);
+        checkRunning();
+        int remaining = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.hasLane()) {
+                subscriber.dispatchEvent(subject, event, sync);
+            } else {
+                remaining++;
+            }
+        }
+
+        int next = 0;
+        while (remaining > 0) {
+            int n = Math.min(remaining, events.length);
+            long hi = producerType == ProducerType.SINGLE ? claimSingle(n) : claimMulti(n);
+            long lo = hi - n + 1;
+            for (long sequence = lo; sequence <= hi; sequence++) {
+                while (subscribers[next].hasLane()) {
+                    next++;
+                }
+                int index = (int) sequence & mask;
+                this.events[index] = event;
+                this.subscribers[index] = subscribers[next++];
+            }
+
+            if (producerType == ProducerType.SINGLE) {
+                cursor.lazySet(hi);
+            } else {
+                for (long sequence = lo; sequence <= hi; sequence++) {
+                    published.lazySet((int) sequence & mask, (int) (sequence >>> indexShift));
+                }
+            }
+            remaining -= n;
+        }
+
+        if (!running && liveConsumers.get() == 0) {
+            // published after the last consumer stopped, so nobody else will clear it
+            discardAbandoned();
+        }
+    }
+
+    private long claimSingle(int n) {
+        Thread current = Thread.currentThread();
+        Thread owner = singleProducer.get();
+        if (owner != current && (owner != null || !singleProducer.compareAndSet(null, current))) {
+            throw new IllegalStateException("Ring buffer dispatcher has a single producer, "
+                    + singleProducer.get().getName() + ", but " + current.getName() + " posted to it");
+        }
+        long next = singleProducerNext + n;
+        long wrapPoint = next - events.length;
+        long cachedGating = gatingCache.get();
+        if (wrapPoint > cachedGating) {
+            long gating;
+            while (wrapPoint > (gating = minimumConsumerSequence(singleProducerNext))) {
+                checkRunning();
+                LockSupport.parkNanos(1L);
+            }
+            gatingCache.lazySet(gating);
+        }
+        singleProducerNext = next;
+        return next;
+    }
+
+    private long claimMulti(int n) {
+        while (true) {
+            long current = cursor.get();
+            long next = current + n;
+            long wrapPoint = next - events.length;
+            long cachedGating = gatingCache.get();
+            if (wrapPoint > cachedGating || cachedGating > current) {
+                long gating = minimumConsumerSequence(current);
+                if (wrapPoint > gating) {
+                    checkRunning();
+                    LockSupport.parkNanos(1L);
+                    continue;
+                }
+                gatingCache.set(gating);
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private long minimumConsumerSequence(long minimum) {
+        for (Consumer consumer : consumers) {
+            minimum = Math.min(minimum, consumer.sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * Returns the highest sequence at or after {@code lowerBound} that can be read, or a value below
+     * {@code lowerBound} if nothing is published yet.
+     */
+    private long highestPublished(long lowerBound) {
+        long available = cursor.get();
+        if (producerType == ProducerType.SINGLE) {
+            return available;
+        }
+        for (long sequence = lowerBound; sequence <= available; sequence++) {
+            if (published.get((int) sequence & mask) != (int) (sequence >>> indexShift)) {
+                return sequence - 1;
+            }
+        }
+        return available;
+    }
+
+    /**
+     * Consumer claiming slots from the shared {@link #workSequence}, so each slot is delivered by
+     * exactly one consumer.
+     */
+    private final class Consumer implements Runnable {
+        /**
+         * Every slot up to and including this sequence has been consumed by this consumer.
+         */
+        private final AtomicLong sequence = new AtomicLong(-1L);
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } finally {
+                if (liveConsumers.decrementAndGet() == 0) {
+                    discardAbandoned();
+                }
+            }
+        }
+
+        private void consume() {
+            boolean processed = true;
+            long nextSequence = 0L;
+            long cachedAvailable = Long.MIN_VALUE;
+            int idle = 0;
+            while (running) {
+                if (processed) {
+                    processed = false;
+                    do {
+                        nextSequence = workSequence.get() + 1L;
+                        sequence.set(nextSequence - 1L);
+                    } while (!workSequence.compareAndSet(nextSequence - 1L, nextSequence));
+                }
+
+                if (cachedAvailable >= nextSequence) {
+                    int index = (int) nextSequence & mask;
+                    Object event = events[index];
+                    Subscriber subscriber = subscribers[index];
+                    events[index] = null;
+                    subscribers[index] = null;
+                    try {
+                        subscriber.deliverEvent(event);
+                    } catch (Throwable e) {
+                        // a dead consumer would stall every producer, so keep consuming
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    }
+                    processed = true;
+                    idle = 0;
+                } else {
+                    cachedAvailable = highestPublished(nextSequence);
+                    if (cachedAvailable < nextSequence) {
+                        waitStrategy.idle(++idle);
+                    }
+                }
+            }
+        }
+    }
+}
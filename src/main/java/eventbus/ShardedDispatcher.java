@@ -0,0 +1,113 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+/**
+ * Async dispatcher that hashes a key of each event to one of a fixed number of single-threaded event
+ * loops. All events with the same key are delivered by the same loop, in the order they were posted,
+ * while events with different keys are delivered in parallel; for example keying robot telemetry by
+ * robot id keeps every robot's stream in order and spreads robots across cores.
+ * <p>Within a loop an event is delivered to its subscribers one after the other, highest priority
+ * first, on the loop thread. Subscribers with an async lane (serial, bounded or conflating) instead get
+ * the event added to their lane on the posting thread, so they keep their own ordering, bound and
+ * conflation; posting order implies per-key order for them as well. Select it with {@link EventBusImpl#EventBusImpl(String,
+ * java.util.concurrent.Executor, ShardedDispatcher)}; sync posts keep using the per-thread queued
+ * dispatcher. Call {@link #shutdown()} to stop the loops.
+ *
+ * @author wuyongkang
+ */
+public final class ShardedDispatcher extends AbstractDispatcher {
+    private final ExecutorService[] shards;
+    private final Function<Object, ?> keyExtractor;
+
+    private ShardedDispatcher(int shardCount, Function<Object, ?> keyExtractor) {
+        Preconditions.checkArgument(shardCount > 0, "shardCount must be positive");
+        this.keyExtractor = Preconditions.checkNotNull(keyExtractor);
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("eventbus-shard-%d")
+                .setDaemon(true)
+                .build();
+        this.shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    /**
+     * Creates a sharded dispatcher and its event loops.
+     *
+     * @param shardCount   the number of event loops, typically the number of cores
+     * @param keyExtractor derives the ordering key of an event, must not return {@code null}
+     * @return a new sharded dispatcher
+     */
+    public static ShardedDispatcher create(int shardCount, Function<Object, ?> keyExtractor) {
+        return new ShardedDispatcher(shardCount, keyExtractor);
+    }
+
+    /**
+     * Stops accepting events. Events already queued are still delivered, later posts are rejected.
+     */
+    public void shutdown() {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Returns the index of the event loop delivering events with {@code key}.
+     */
+    int shardOf(Object key) {
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shards.length);
+    }
+
+    @Override
+    void dispatch(String subject, Object event, Subscriber[] subscribers, boolean sync) {
+        Preconditions.checkNotNull(event);
+        if (subscribers.length == 0) {
+            return;
+        }
+        Object key = Preconditions.checkNotNull(keyExtractor.apply(PostCompletion.unwrap(event)), "shard key");
+        Subscriber[] sharded = withoutLanes(subject, event, subscribers, sync);
+        if (sharded.length == 0) {
+            return;
+        }
+        shards[shardOf(key)].execute(() -> {
+            for (Subscriber subscriber : sharded) {
+                subscriber.deliverEvent(event);
+            }
+        });
+    }
+
+    /**
+     * Adds {@code event} to the lanes of the subscribers having one, in posting order, and returns
+     * the remaining subscribers.
+     */
+    private static Subscriber[] withoutLanes(String subject, Object event, Subscriber[] subscribers,
+                                             boolean sync) {
+        int laned = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.hasLane()) {
+                subscriber.dispatchEvent(subject, event, sync);
+                laned++;
+            }
+        }
+        if (laned == 0) {
+            return subscribers;
+        }
+        Subscriber[] result = new Subscriber[subscribers.length - laned];
+        int size = 0;
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.hasLane()) {
+                result[size++] = subscriber;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The last event posted on one sticky subject, per event class. Holds at most {@code maxEvents}
+ * classes; posting an event of another class evicts the least recently posted one.
+ *
+ * @author wuyongkang
+ */
+final class StickyEvents {
+    /**
+     * Latest event per class, least recently posted first. Guarded by {@code this}.
+     */
+    private final LinkedHashMap<Class<?>, Object> events;
+
+    StickyEvents(int maxEvents) {
+        Preconditions.checkArgument(maxEvents > 0, "maxEvents must be positive");
+        this.events = new LinkedHashMap<Class<?>, Object>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Class<?>, Object> eldest) {
+                return size() > maxEvents;
+            }
+        };
+    }
+
+    synchronized void put(Object event) {
+        // re-insert so the entry moves to the most recently posted end
+        events.remove(event.getClass());
+        events.put(event.getClass(), event);
+    }
+
+    @Nullable
+    synchronized Object get(Class<?> eventClass) {
+        return events.get(eventClass);
+    }
+
+    @Nullable
+    synchronized Object remove(Class<?> eventClass) {
+        return events.remove(eventClass);
+    }
+
+    synchronized void clear() {
+        events.clear();
+    }
+
+    /**
+     * Returns the retained events, least recently posted first.
+     */
+    synchronized ImmutableList<Object> snapshot() {
+        return ImmutableList.copyOf(events.values());
+    }
+}
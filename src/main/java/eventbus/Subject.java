@@ -4,6 +4,9 @@ import java.lang.annotation.*;
 
 /**
  * Event Subject
+ * <p>Subjects are hierarchical, with segments separated by {@code '.'}. A subscriber subject may use
+ * {@code *} to match exactly one segment and {@code #} to match zero or more segments, e.g.
+ * {@code robot.joint.*} or {@code robot.#}.
  *
  * @author wuyongkang
  */
@@ -0,0 +1,116 @@
+package eventbus;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable trie of hierarchical subject patterns. Subjects are split into segments on {@code '.'};
+ * in a pattern {@code *} matches exactly one segment and {@code #} matches zero or more segments,
+ * so {@code robot.joint.*} matches {@code robot.joint.1} and {@code robot.#} matches
+ * {@code robot}, {@code robot.joint} and {@code robot.joint.1}.
+ *
+ * @author wuyongkang
+ */
+final class SubjectTrie {
+    static final SubjectTrie EMPTY = new SubjectTrie(ImmutableSet.of());
+
+    private static final String SINGLE_WILDCARD = "*";
+    private static final String MULTI_WILDCARD = "#";
+    private static final Splitter SEGMENTS = Splitter.on('.');
+
+    private final Node root = new Node();
+    private final ImmutableSet<String> patterns;
+
+    private SubjectTrie(ImmutableSet<String> patterns) {
+        this.patterns = patterns;
+        for (String pattern : patterns) {
+            Node node = root;
+            for (String segment : SEGMENTS.split(pattern)) {
+                node = node.child(segment);
+            }
+            node.patterns.add(pattern);
+        }
+    }
+
+    /**
+     * Compiles {@code patterns} into a trie.
+     */
+    static SubjectTrie compile(Iterable<String> patterns) {
+        ImmutableSet<String> distinct = ImmutableSet.copyOf(patterns);
+        return distinct.isEmpty() ? EMPTY : new SubjectTrie(distinct);
+    }
+
+    /**
+     * Returns whether {@code subject} contains a wildcard segment.
+     */
+    static boolean isPattern(String subject) {
+        for (String segment : SEGMENTS.split(subject)) {
+            if (SINGLE_WILDCARD.equals(segment) || MULTI_WILDCARD.equals(segment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the patterns this trie was compiled from.
+     */
+    ImmutableSet<String> patterns() {
+        return patterns;
+    }
+
+    /**
+     * Returns all patterns matching the concrete {@code subject}.
+     */
+    ImmutableSet<String> match(String subject) {
+        if (patterns.isEmpty()) {
+            return ImmutableSet.of();
+        }
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        match(root, SEGMENTS.splitToList(subject), 0, result);
+        return result.build();
+    }
+
+    private static void match(Node node, List<String> segments, int index, ImmutableSet.Builder<String> result) {
+        Node hash = node.children.get(MULTI_WILDCARD);
+        if (hash != null) {
+            // '#' swallows any number of the remaining segments, including none
+            for (int next = index; next <= segments.size(); next++) {
+                match(hash, segments, next, result);
+            }
+        }
+
+        if (index == segments.size()) {
+            result.addAll(node.patterns);
+            return;
+        }
+
+        Node literal = node.children.get(segments.get(index));
+        if (literal != null) {
+            match(literal, segments, index + 1, result);
+        }
+        Node star = node.children.get(SINGLE_WILDCARD);
+        if (star != null) {
+            match(star, segments, index + 1, result);
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = Maps.newHashMap();
+        private final List<String> patterns = Lists.newArrayList();
+
+        Node child(String segment) {
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node();
+                children.put(segment, child);
+            }
+            return child;
+        }
+    }
+}
@@ -11,4 +11,10 @@ import java.lang.annotation.*;
 @Target({ElementType.METHOD, ElementType.ANNOTATION_TYPE})
 @Inherited
 public @interface Subscribe {
+    /**
+     * Delivery priority; subscribers with a higher priority receive an event first. Sync posts call
+     * matched subscribers in descending priority, and async deliveries of a bus that has any
+     * prioritized subscriber are drained from a priority queue, highest first.
+     */
+    int priority() default 0;
 }
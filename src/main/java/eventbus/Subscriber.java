@@ -1,12 +1,19 @@
 package eventbus;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.j2objc.annotations.Weak;
 
 import javax.annotation.Nullable;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * A subscriber method on a specific object, plus the executor that should be used for dispatching
@@ -14,41 +21,105 @@ import java.lang.reflect.Method;
  */
 class Subscriber {
     /**
-     * The object with the subscriber method.
+     * Orders subscribers by descending {@linkplain #getPriority() priority}.
      */
-    @VisibleForTesting
-    final Object target;
+    static final Comparator<Subscriber> BY_PRIORITY = (a, b) -> Integer.compare(b.priority, a.priority);
+
+    /**
+     * The object with the subscriber method, or {@code null} if it is held {@linkplain #weakTarget weakly}.
+     */
+    @Nullable
+    private final Object target;
+    /**
+     * Weak reference to the object with the subscriber method, or {@code null} if it is held strongly.
+     */
+    @Nullable
+    private final WeakReference<Object> weakTarget;
+    /**
+     * Identity hash of the target, kept so the hash code survives its collection.
+     */
+    private final int targetHash;
     /**
      * The subject for the subscriber
      */
     private final String subject;
+    /**
+     * The delivery priority declared by the subscribe annotation.
+     */
+    private final int priority;
     /**
      * Subscriber method.
      */
     private final Method method;
+    /**
+     * Invoker calling {@link #method} on {@link #target}.
+     */
+    private final SubscriberInvoker invoker;
     /**
      * The event bus this subscriber belongs to.
      */
     @Weak
     private EventBusImpl bus;
+    /**
+     * Pending async events, or {@code null} if async events are handed to the executor directly.
+     */
+    @Nullable
+    private final AsyncLane lane;
+    /**
+     * Cached statistics of this subscriber method, checked against the current bus metrics.
+     */
+    @Nullable
+    private EventBusMetrics.SubscriberStats stats;
+    /**
+     * Decaying average execution time of this subscriber in adaptive mode, negative until measured.
+     * Updated without synchronization, so concurrent deliveries may lose a sample.
+     */
+    private volatile long averageNanos = -1L;
 
-    private Subscriber(EventBusImpl bus, Object target, Method method) {
+    private Subscriber(EventBusImpl bus, Object target, Method method, SubscriberInvoker invoker, boolean serial,
+                       @Nullable SubscriberRegistry weakRegistry) {
         this.bus = bus;
-        this.target = Preconditions.checkNotNull(target);
+        Preconditions.checkNotNull(target);
+        this.target = weakRegistry == null ? target : null;
+        this.weakTarget = weakRegistry == null ? null : SubscriberCleaner.track(target, this, weakRegistry.weakReference());
+        this.targetHash = System.identityHashCode(target);
         this.method = method;
+        this.invoker = Preconditions.checkNotNull(invoker);
         this.subject = getSubject(method);
-        method.setAccessible(true);
+        this.priority = getPriority(method);
+        this.lane = createLane(bus, serial);
+    }
+
+    @Nullable
+    private AsyncLane createLane(EventBusImpl bus, boolean serial) {
+        Function<Object, ?> conflationKey = bus.conflationKey(subject);
+        if (conflationKey != null) {
+            return AsyncLane.conflating(this, conflationKey);
+        }
+        if (serial || bus.asyncQueueCapacity() != EventBusImpl.UNBOUNDED) {
+            return AsyncLane.queued(this, bus.asyncQueueCapacity(), bus.overflowPolicy(), serial);
+        }
+        return null;
     }
 
     /**
      * Creates a {@code Subscriber} for {@code method} on {@code listener}.
      */
     static Subscriber create(EventBusImpl bus, Object listener, Method method) {
-        String subject = "";
-        method.isAnnotationPresent(Subject.class);
+        return create(bus, listener, method, null);
+    }
+
+    /**
+     * Creates a {@code Subscriber} for {@code method} on {@code listener}. If {@code weakRegistry} is
+     * not {@code null}, the listener is only weakly reachable from the subscriber, which is purged
+     * from {@code weakRegistry} after the listener is collected.
+     */
+    static Subscriber create(EventBusImpl bus, Object listener, Method method,
+                             @Nullable SubscriberRegistry weakRegistry) {
+        SubscriberInvoker invoker = SubscriberInvokers.create(method);
         return isDeclaredThreadSafe(method)
-                ? new Subscriber(bus, listener, method)
-                : new SynchronizedSubscriber(bus, listener, method);
+                ? new Subscriber(bus, listener, method, invoker, false, weakRegistry)
+                : new SynchronizedSubscriber(bus, listener, method, invoker, weakRegistry);
     }
 
     /**
@@ -81,45 +152,264 @@ class Subscriber {
     }
 
     /**
-     * Dispatches {@code event} to this subscriber using the proper executor.
+     * Return the priority declared by the {@link Subscribe} or {@link ParSubscribe} annotation of
+     * {@code method}.
+     */
+    private static int getPriority(Method method) {
+        Subscribe subscribe = method.getAnnotation(Subscribe.class);
+        if (subscribe != null) {
+            return subscribe.priority();
+        }
+        ParSubscribe parSubscribe = method.getAnnotation(ParSubscribe.class);
+        return parSubscribe == null ? 0 : parSubscribe.priority();
+    }
+
+    /**
+     * Dispatches {@code event}, posted on {@code subject}, to this subscriber using the proper executor.
      */
-    final void dispatchEvent(final Object event, boolean sync) {
+    final void dispatchEvent(String subject, final Object event, boolean sync) {
         HybridExecutor executor = bus.executor();
-        executor.execute(
-                () -> {
-                    try {
-                        invokeSubscriberMethod(event);
-                    } catch (InvocationTargetException e) {
-                        bus.handleSubscriberException(e.getCause(), context(event));
-                    }
-                }, sync);
+        if (lane == null) {
+            sync = executor.runSync(sync, averageNanos);
+        } else if (!sync) {
+            lane.add(subject, event);
+            return;
+        }
+
+        if (sync && executor.isDirectSync()) {
+            // no task to hand over, so nothing to allocate
+            deliverEvent(event);
+            return;
+        }
+        long enqueued = sync ? 0L : queueWaitStart();
+        if (enqueued == 0L) {
+            executor.execute(() -> deliverEvent(event), sync, priority);
+        } else {
+            executor.execute(() -> {
+                recordQueueWait(enqueued);
+                deliverEvent(event);
+            }, false, priority);
+        }
     }
 
     /**
-     * Invokes the subscriber method. This method can be overridden to make the invocation
-     * synchronized.
+     * Dispatches a batch of {@code events}, posted on {@code subject}, to this subscriber in a single
+     * executor task.
      */
-    @VisibleForTesting
-    void invokeSubscriberMethod(Object event) throws InvocationTargetException {
+    final void dispatchEvents(String subject, final List<Object> events, boolean sync) {
+        HybridExecutor executor = bus.executor();
+        if (lane == null) {
+            sync = executor.runSync(sync, averageNanos);
+        } else if (!sync) {
+            for (Object event : events) {
+                lane.add(subject, event);
+            }
+            return;
+        }
+
+        if (sync && executor.isDirectSync()) {
+            for (Object event : events) {
+                deliverEvent(event);
+            }
+            return;
+        }
+        long enqueued = sync ? 0L : queueWaitStart();
+        executor.execute(() -> {
+            recordQueueWait(enqueued);
+            for (Object event : events) {
+                deliverEvent(event);
+            }
+        }, sync, priority);
+    }
+
+    /**
+     * Returns whether async events for this subscriber pass through its own {@link AsyncLane},
+     * which dispatchers must not bypass.
+     */
+    final boolean hasLane() {
+        return lane != null;
+    }
+
+    /**
+     * Returns the executor of the bus this subscriber belongs to.
+     */
+    final HybridExecutor executor() {
+        return bus.executor();
+    }
+
+    /**
+     * Records that {@code event} was discarded by this subscriber's bounded queue.
+     */
+    final void eventDropped(Object event) {
+        bus.eventDropped(subject);
+        if (event instanceof PostCompletion) {
+            PostCompletion post = (PostCompletion) event;
+            post.completed(context(post.event),
+                    new RejectedExecutionException("Event dropped by a full subscriber queue"), null);
+        }
+    }
+
+    /**
+     * Delivers {@code event} to this subscriber on the calling thread, passing any exception other
+     * than an {@link Error} to the bus exception handler. A {@link PostCompletion} is unwrapped and
+     * told the outcome.
+     */
+    final void deliverEvent(Object event) {
+        PostCompletion post = event instanceof PostCompletion ? (PostCompletion) event : null;
+        if (isCollected()) {
+            // the listener is gone; the cleaner removes this subscriber shortly
+            if (post != null) {
+                post.completed(null, null, null);
+            }
+            return;
+        }
+        Object payload = post == null ? event : post.event;
+        EventBusMetrics.SubscriberStats stats = stats();
+        // only subscribers without a lane are placed adaptively
+        boolean adaptive = lane == null && bus.executor().isAdaptive();
+        long start = stats == null && !adaptive ? 0L : System.nanoTime();
+        Object reply = null;
+        Throwable failure = null;
         try {
-            method.invoke(target, Preconditions.checkNotNull(event));
-        } catch (IllegalArgumentException e) {
-            throw new Error("Method rejected target/argument: " + event, e);
-        } catch (IllegalAccessException e) {
-            throw new Error("Method became inaccessible: " + event, e);
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof Error) {
-                throw (Error) e.getCause();
+            reply = invokeSubscriberMethod(payload);
+        } catch (Error e) {
+            if (post != null) {
+                post.completed(context(payload), e, null);
             }
             throw e;
+        } catch (Throwable e) {
+            failure = e;
+        }
+
+        long elapsed = start == 0L ? 0L : System.nanoTime() - start;
+        if (adaptive) {
+            averageNanos = HybridExecutor.decay(averageNanos, elapsed);
+        }
+        if (stats != null) {
+            stats.latency.record(elapsed);
+            stats.invocations.increment();
+            if (failure != null) {
+                stats.exceptions.increment();
+            }
+        }
+        SubscriberExceptionContext context = null;
+        if (failure != null) {
+            context = context(payload);
+            bus.handleSubscriberException(failure, context);
+        }
+        if (post != null) {
+            post.completed(context, failure, reply);
+        }
+    }
+
+    /**
+     * Returns the time an async delivery is handed to the executor, or {@code 0} while metrics are
+     * disabled.
+     */
+    final long queueWaitStart() {
+        return bus.getMetrics() == null ? 0L : System.nanoTime();
+    }
+
+    /**
+     * Records the executor queue wait of a delivery handed over at {@code enqueued}, as returned by
+     * {@link #queueWaitStart()}.
+     */
+    final void recordQueueWait(long enqueued) {
+        if (enqueued == 0L) {
+            return;
+        }
+        EventBusMetrics.SubscriberStats stats = stats();
+        if (stats != null) {
+            stats.queueWait.record(System.nanoTime() - enqueued);
+        }
+    }
+
+    /**
+     * Returns whether the current delivery runs on a virtual thread of a bus created by
+     * {@link EventBusImpl#withVirtualThreads(String)}.
+     */
+    final boolean onVirtualThread() {
+        return bus.usesVirtualThreads() && VirtualThreads.isVirtual(Thread.currentThread());
+    }
+
+    /**
+     * Records a delivery that pinned its carrier thread for {@code nanos} while holding or waiting
+     * for the monitor of this subscriber.
+     *
+     * @param firstTime whether this is the first pinned delivery of this subscriber, which is logged
+     */
+    final void deliveryPinned(long nanos, boolean firstTime) {
+        bus.deliveryPinned(firstTime
+                ? "Subscriber method " + method + " on " + getTarget() + " pinned a virtual thread's carrier for "
+                + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms in a synchronized delivery; annotate it with "
+                + "@AllowConcurrentEvents or @ParSubscribe if it is thread-safe"
+                : null);
+    }
+
+    /**
+     * Returns the statistics of this subscriber method, or {@code null} while metrics are disabled.
+     */
+    @Nullable
+    private EventBusMetrics.SubscriberStats stats() {
+        EventBusMetrics metrics = bus.getMetrics();
+        if (metrics == null) {
+            return null;
+        }
+
+        EventBusMetrics.SubscriberStats result = stats;
+        if (result == null || result.owner != metrics) {
+            Object target = getTarget();
+            if (target == null) {
+                return null;
+            }
+            result = metrics.subscriberStats(target.getClass().getName()
+                    + '#' + method.getName()
+                    + '(' + method.getParameterTypes()[0].getName() + ')');
+            stats = result;
         }
+        return result;
+    }
+
+    /**
+     * Invokes the subscriber method and returns its result. This method can be overridden to make
+     * the invocation synchronized.
+     */
+    @VisibleForTesting
+    Object invokeSubscriberMethod(Object event) throws Throwable {
+        Object target = getTarget();
+        // a weak target collected since the delivery started misses the event
+        return target == null ? null : invoker.invoke(target, Preconditions.checkNotNull(event));
     }
 
     /**
      * Gets the context for the given event.
      */
     private SubscriberExceptionContext context(Object event) {
-        return new SubscriberExceptionContext(bus, event, target, method);
+        // a weak target may be collected right after failing; the subscriber then stands in for it
+        return new SubscriberExceptionContext(bus, event, MoreObjects.firstNonNull(getTarget(), this), method);
+    }
+
+    /**
+     * Returns the object with the subscriber method, or {@code null} if it was weakly held and has
+     * been collected.
+     */
+    @Nullable
+    final Object getTarget() {
+        return weakTarget == null ? target : weakTarget.get();
+    }
+
+    /**
+     * Returns whether the weakly held object with the subscriber method has been collected.
+     */
+    final boolean isCollected() {
+        return weakTarget != null && weakTarget.get() == null;
+    }
+
+    /**
+     * Returns the event type of the subscriber method.
+     */
+    final Class<?> getEventType() {
+        return method.getParameterTypes()[0];
     }
 
     /**
@@ -131,19 +421,32 @@ class Subscriber {
         return subject;
     }
 
+    /**
+     * Return the delivery priority of this subscriber; higher runs first
+     *
+     * @return the delivery priority
+     */
+    int getPriority() {
+        return priority;
+    }
+
     @Override
     public final int hashCode() {
-        return (31 + method.hashCode()) * 31 + System.identityHashCode(target);
+        return (31 + method.hashCode()) * 31 + targetHash;
     }
 
     @Override
     public final boolean equals(@Nullable Object obj) {
+        if (obj == this) {
+            return true;
+        }
         if (obj instanceof Subscriber) {
             Subscriber that = (Subscriber) obj;
             // Use == so that different equal instances will still receive events.
             // We only guard against the case that the same object is registered
             // multiple times
-            return target == that.target && method.equals(that.method);
+            Object target = getTarget();
+            return target != null && target == that.getTarget() && method.equals(that.method);
         }
         return false;
     }
@@ -151,18 +454,43 @@ class Subscriber {
     /**
      * Subscriber that synchronizes invocations of a method to ensure that only one thread may enter
      * the method at a time.
+     * <p>Async events go through a serial {@link AsyncLane}, so the monitor only guards against
+     * concurrent sync posts.
      */
     @VisibleForTesting
     static final class SynchronizedSubscriber extends Subscriber {
+        /**
+         * Minimum time a virtual thread spends on the monitor before the delivery is reported as
+         * pinned, the default threshold of the JFR {@code jdk.VirtualThreadPinned} event.
+         */
+        private static final long PINNED_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
 
-        private SynchronizedSubscriber(EventBusImpl bus, Object target, Method method) {
-            super(bus, target, method);
+        private final AtomicBoolean pinningReported = new AtomicBoolean();
+
+        private SynchronizedSubscriber(EventBusImpl bus, Object target, Method method, SubscriberInvoker invoker,
+                                       @Nullable SubscriberRegistry weakRegistry) {
+            super(bus, target, method, invoker, true, weakRegistry);
         }
 
         @Override
-        void invokeSubscriberMethod(Object event) throws InvocationTargetException {
-            synchronized (this) {
-                super.invokeSubscriberMethod(event);
+        Object invokeSubscriberMethod(Object event) throws Throwable {
+            if (!onVirtualThread()) {
+                synchronized (this) {
+                    return super.invokeSubscriberMethod(event);
+                }
+            }
+
+            // a virtual thread blocking inside or in front of a monitor pins its carrier thread
+            long start = System.nanoTime();
+            try {
+                synchronized (this) {
+                    return super.invokeSubscriberMethod(event);
+                }
+            } finally {
+                long pinned = System.nanoTime() - start;
+                if (pinned >= PINNED_THRESHOLD_NANOS) {
+                    deliveryPinned(pinned, pinningReported.compareAndSet(false, true));
+                }
             }
         }
     }
@@ -0,0 +1,103 @@
+package eventbus;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Removes the subscribers of weakly registered listeners once the listeners are garbage collected.
+ * <p>A single daemon thread waits for collected listeners, lets more of them accumulate for
+ * {@link #BATCH_DELAY_MILLIS}, and then hands them to their registries in one batch per registry, so
+ * each batch costs one copy of every affected subscriber set and posting threads never do the work.
+ * <p>Registries are only referenced weakly, so a discarded bus is not kept reachable by the cleaner;
+ * collected listeners of a bus that is gone are simply dropped.
+ *
+ * @author wuyongkang
+ */
+final class SubscriberCleaner {
+    private static final Logger logger = Logger.getLogger(SubscriberCleaner.class.getName());
+    /**
+     * Time to wait after the first collected listener for the rest of a GC cycle's listeners.
+     */
+    private static final long BATCH_DELAY_MILLIS = 100;
+    private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+    private static volatile boolean started;
+
+    private SubscriberCleaner() {
+    }
+
+    /**
+     * Returns a weak reference to {@code target} that queues {@code subscriber} for removal from
+     * {@code registry} once {@code target} is collected.
+     */
+    static WeakReference<Object> track(Object target, Subscriber subscriber,
+                                       WeakReference<SubscriberRegistry> registry) {
+        if (!started) {
+            start();
+        }
+        return new Target(target, subscriber, registry);
+    }
+
+    private static synchronized void start() {
+        if (started) {
+            return;
+        }
+        new ThreadFactoryBuilder()
+                .setNameFormat("eventbus-subscriber-cleaner")
+                .setDaemon(true)
+                .build()
+                .newThread(SubscriberCleaner::cleanLoop)
+                .start();
+        started = true;
+    }
+
+    private static void cleanLoop() {
+        while (true) {
+            try {
+                Reference<?> first = collected.remove();
+                TimeUnit.MILLISECONDS.sleep(BATCH_DELAY_MILLIS);
+                ListMultimap<SubscriberRegistry, Subscriber> batches = ArrayListMultimap.create();
+                for (Reference<?> reference = first; reference != null; reference = collected.poll()) {
+                    Target target = (Target) reference;
+                    SubscriberRegistry registry = target.registry.get();
+                    if (registry != null) {
+                        batches.put(registry, target.subscriber);
+                    }
+                }
+                for (Map.Entry<SubscriberRegistry, Collection<Subscriber>> batch : batches.asMap().entrySet()) {
+                    batch.getKey().purge(batch.getValue());
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to purge collected subscribers", e);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a listener, remembering the subscriber to remove.
+     */
+    private static final class Target extends WeakReference<Object> {
+        private final Subscriber subscriber;
+        /**
+         * The registry to purge, shared by all targets of the registry.
+         */
+        private final WeakReference<SubscriberRegistry> registry;
+
+        private Target(Object target, Subscriber subscriber, WeakReference<SubscriberRegistry> registry) {
+            super(target, collected);
+            this.subscriber = subscriber;
+            this.registry = registry;
+        }
+    }
+}
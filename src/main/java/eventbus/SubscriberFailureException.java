@@ -0,0 +1,39 @@
+package eventbus;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Iterator;
+
+/**
+ * Completes the future of an {@link EventBus#postAsync(String, Object)} or
+ * {@link EventBus#request(String, Object)} when at least one matched subscriber failed. The first
+ * failure is the cause, the others are suppressed.
+ *
+ * @author wuyongkang
+ */
+public class SubscriberFailureException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final ImmutableMap<SubscriberExceptionContext, Throwable> failures;
+
+    SubscriberFailureException(ImmutableMap<SubscriberExceptionContext, Throwable> failures, int subscribers) {
+        super(failures.size() + " of " + subscribers + " subscribers failed", failures.values().iterator().next());
+        this.failures = failures;
+        Iterator<Throwable> others = failures.values().iterator();
+        others.next();
+        while (others.hasNext()) {
+            addSuppressed(others.next());
+        }
+    }
+
+    /**
+     * Returns the failure of every subscriber that did not handle the event, indexed by the context
+     * of the failed delivery. A delivery discarded by a full subscriber queue fails with a
+     * {@link java.util.concurrent.RejectedExecutionException}.
+     *
+     * @return the failures, in the order they happened
+     */
+    public ImmutableMap<SubscriberExceptionContext, Throwable> getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,35 @@
+package eventbus;
+
+import javax.annotation.Nullable;
+
+/**
+ * Index of subscriber methods computed at compile time by
+ * {@code eventbus.processor.SubscriberIndexProcessor}. Indexes are discovered through
+ * {@link java.util.ServiceLoader} from the class loader of each class in a listener's hierarchy, and
+ * classes no index knows are inspected by reflection.
+ *
+ * @author wuyongkang
+ */
+public interface SubscriberIndex {
+    /**
+     * Returns the subscriber methods the given class declares itself; inherited ones are looked up
+     * under their declaring classes.
+     *
+     * @param listenerClassName the binary name of the class
+     * @return the declared subscriber methods, or {@code null} if the class is not indexed
+     */
+    @Nullable
+    SubscriberMethod[] lookup(String listenerClassName);
+
+    /**
+     * Returns the supertypes of the given class recorded at compile time, superclasses and
+     * interfaces nearest first and without JDK types, so the registry need not compute the hierarchy.
+     *
+     * @param className the binary name of the class
+     * @return the binary names of the supertypes, or {@code null} if they were not recorded
+     */
+    @Nullable
+    default String[] supertypes(String className) {
+        return null;
+    }
+}
@@ -0,0 +1,21 @@
+package eventbus;
+
+/**
+ * Invokes a subscriber method on its target. Implementations are created once per subscriber by
+ * {@link SubscriberInvokers#create(java.lang.reflect.Method)} and must be safe to call from multiple
+ * threads.
+ *
+ * @author wuyongkang
+ */
+interface SubscriberInvoker {
+    /**
+     * Invokes the subscriber method, propagating whatever the method itself throws.
+     *
+     * @param target the object with the subscriber method
+     * @param event  the event to deliver
+     * @return the value returned by the subscriber method, boxed if primitive, or {@code null} for a
+     * {@code void} method
+     * @throws Throwable the exception thrown by the subscriber method
+     */
+    Object invoke(Object target, Object event) throws Throwable;
+}
@@ -0,0 +1,206 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Factory for {@link SubscriberInvoker}s, picking the cheapest strategy the subscriber method
+ * allows:
+ * <ol>
+ * <li>a {@link LambdaMetafactory} generated class calling the method directly, for public instance
+ * methods on public classes visible to this class loader;</li>
+ * <li>a {@link MethodHandle} obtained through {@link MethodHandles.Lookup#unreflect(Method)} for
+ * everything {@link Method#setAccessible(boolean)} can open up;</li>
+ * <li>plain reflection as the last resort.</li>
+ * </ol>
+ *
+ * @author wuyongkang
+ */
+final class SubscriberInvokers {
+    private static final MethodType INVOKER_TYPE =
+            MethodType.methodType(Object.class, Object.class, Object.class);
+    private static final MethodType VOID_INVOKER_TYPE =
+            MethodType.methodType(void.class, Object.class, Object.class);
+    /**
+     * Invokers are stateless, so every subscriber of a method shares one instead of generating its
+     * own class. Keyed by identity, which works because {@link SubscriberRegistry} caches the
+     * {@code Method} objects of each listener class. Values are weak too, since an invoker references
+     * its method and would otherwise keep the key alive; an invoker lives as long as a subscriber
+     * uses it.
+     */
+    private static final LoadingCache<Method, SubscriberInvoker> invokerCache =
+            CacheBuilder.newBuilder()
+                    .weakKeys()
+                    .weakValues()
+                    .build(CacheLoader.from(SubscriberInvokers::createUncached));
+
+    private SubscriberInvokers() {
+    }
+
+    /**
+     * Returns the invoker for {@code method}.
+     */
+    static SubscriberInvoker create(Method method) {
+        return invokerCache.getUnchecked(Preconditions.checkNotNull(method));
+    }
+
+    private static SubscriberInvoker createUncached(Method method) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        if (isDirectlyCallable(method)) {
+            try {
+                return generate(lookup, method);
+            } catch (ReflectiveOperationException | LambdaConversionException | RuntimeException e) {
+                // fall through to the method handle invoker
+            }
+        }
+
+        try {
+            method.setAccessible(true);
+            return new MethodHandleInvoker(lookup.unreflect(method), Modifier.isStatic(method.getModifiers()));
+        } catch (RuntimeException | IllegalAccessException e) {
+            return new ReflectiveInvoker(method);
+        }
+    }
+
+    /**
+     * Returns whether generated bytecode in this package can call {@code method} without any access
+     * checks being relaxed.
+     */
+    private static boolean isDirectlyCallable(Method method) {
+        Class<?> declaringClass = method.getDeclaringClass();
+        int modifiers = method.getModifiers();
+        if (Modifier.isStatic(modifiers)
+                || !Modifier.isPublic(modifiers)
+                || !Modifier.isPublic(declaringClass.getModifiers())
+                || method.getParameterTypes()[0].isPrimitive()) {
+            return false;
+        }
+
+        for (Class<?> enclosing = declaringClass.getEnclosingClass();
+             enclosing != null;
+             enclosing = enclosing.getEnclosingClass()) {
+            if (!Modifier.isPublic(enclosing.getModifiers())) {
+                return false;
+            }
+        }
+
+        return isVisible(declaringClass) && isVisible(method.getParameterTypes()[0]);
+    }
+
+    /**
+     * Returns whether {@code type} resolves to the same class from this class's loader, which is
+     * where the generated invoker class will be linked.
+     */
+    private static boolean isVisible(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, SubscriberInvokers.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static SubscriberInvoker generate(MethodHandles.Lookup lookup, Method method)
+            throws ReflectiveOperationException, LambdaConversionException {
+        MethodHandle implementation = lookup.unreflect(method);
+        // a lambda cannot turn a void method into one returning Object, so void methods get their
+        // own functional interface and a thin adapter
+        boolean isVoid = method.getReturnType() == void.class;
+        Class<?> returnType = isVoid ? void.class : Object.class;
+        CallSite site = LambdaMetafactory.metafactory(
+                lookup,
+                "invoke",
+                MethodType.methodType(isVoid ? VoidInvoker.class : SubscriberInvoker.class),
+                isVoid ? VOID_INVOKER_TYPE : INVOKER_TYPE,
+                implementation,
+                MethodType.methodType(returnType, method.getDeclaringClass(), method.getParameterTypes()[0]));
+        Object invoker;
+        try {
+            invoker = site.getTarget().invoke();
+        } catch (Throwable e) {
+            // the factory of a non-capturing lambda throws nothing checked
+            Throwables.throwIfUnchecked(e);
+            throw new IllegalStateException(e);
+        }
+        return isVoid ? new VoidInvokerAdapter((VoidInvoker) invoker) : (SubscriberInvoker) invoker;
+    }
+
+    /**
+     * Generated invoker of a {@code void} subscriber method.
+     */
+    interface VoidInvoker {
+        void invoke(Object target, Object event) throws Throwable;
+    }
+
+    /**
+     * Adapts a {@link VoidInvoker} to {@link SubscriberInvoker}.
+     */
+    private static final class VoidInvokerAdapter implements SubscriberInvoker {
+        private final VoidInvoker invoker;
+
+        private VoidInvokerAdapter(VoidInvoker invoker) {
+            this.invoker = invoker;
+        }
+
+        @Override
+        public Object invoke(Object target, Object event) throws Throwable {
+            invoker.invoke(target, event);
+            return null;
+        }
+    }
+
+    /**
+     * Invoker backed by a {@link MethodHandle} adapted to {@code (Object, Object)Object}; a
+     * {@code void} method returns {@code null}.
+     */
+    private static final class MethodHandleInvoker implements SubscriberInvoker {
+        private final MethodHandle handle;
+
+        private MethodHandleInvoker(MethodHandle handle, boolean isStatic) {
+            MethodHandle adapted = isStatic ? MethodHandles.dropArguments(handle, 0, Object.class) : handle;
+            this.handle = adapted.asType(INVOKER_TYPE);
+        }
+
+        @Override
+        public Object invoke(Object target, Object event) throws Throwable {
+            return handle.invokeExact(target, event);
+        }
+    }
+
+    /**
+     * Invoker backed by {@link Method#invoke(Object, Object...)}, used when the method cannot be
+     * unreflected.
+     */
+    private static final class ReflectiveInvoker implements SubscriberInvoker {
+        private final Method method;
+
+        private ReflectiveInvoker(Method method) {
+            this.method = method;
+        }
+
+        @Override
+        public Object invoke(Object target, Object event) throws Throwable {
+            try {
+                return method.invoke(target, event);
+            } catch (IllegalArgumentException e) {
+                throw new Error("Method rejected target/argument: " + event, e);
+            } catch (IllegalAccessException e) {
+                throw new Error("Method became inaccessible: " + event, e);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
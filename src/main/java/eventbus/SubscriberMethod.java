@@ -0,0 +1,64 @@
+package eventbus;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.reflect.Method;
+
+/**
+ * Coordinates of a subscriber method recorded in a {@link SubscriberIndex}. Classes are kept by
+ * name so the index can be loaded without loading the listener hierarchy.
+ *
+ * @author wuyongkang
+ */
+public final class SubscriberMethod {
+    private static final ImmutableMap<String, Class<?>> PRIMITIVES = ImmutableMap.<String, Class<?>>builder()
+            .put("boolean", boolean.class)
+            .put("byte", byte.class)
+            .put("char", char.class)
+            .put("short", short.class)
+            .put("int", int.class)
+            .put("long", long.class)
+            .put("float", float.class)
+            .put("double", double.class)
+            .build();
+
+    private final String declaringClassName;
+    private final String methodName;
+    private final String parameterTypeName;
+
+    /**
+     * @param declaringClassName the binary name of the class declaring the method
+     * @param methodName         the method name
+     * @param parameterTypeName  the name of the erased event parameter type, in the form accepted
+     *                           by {@link Class#forName(String)} or a primitive keyword
+     */
+    public SubscriberMethod(String declaringClassName, String methodName, String parameterTypeName) {
+        this.declaringClassName = Preconditions.checkNotNull(declaringClassName);
+        this.methodName = Preconditions.checkNotNull(methodName);
+        this.parameterTypeName = Preconditions.checkNotNull(parameterTypeName);
+    }
+
+    /**
+     * Resolves the recorded method against the given class loader.
+     */
+    Method resolve(ClassLoader loader) throws ClassNotFoundException, NoSuchMethodException {
+        Class<?> declaringClass = Class.forName(declaringClassName, false, loader);
+        return declaringClass.getDeclaredMethod(methodName, resolveType(parameterTypeName, loader));
+    }
+
+    private static Class<?> resolveType(String name, ClassLoader loader) throws ClassNotFoundException {
+        Class<?> primitive = PRIMITIVES.get(name);
+        return primitive != null ? primitive : Class.forName(name, false, loader);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("declaringClass", declaringClassName)
+                .add("method", methodName)
+                .add("parameterType", parameterTypeName)
+                .toString();
+    }
+}
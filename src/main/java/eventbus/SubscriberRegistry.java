@@ -12,11 +12,12 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.j2objc.annotations.Weak;
 
 import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Registry of subscribers to a single event bus.
@@ -39,6 +40,20 @@ final class SubscriberRegistry {
                                     return getAnnotatedMethodsNotCached(concreteClass);
                                 }
                             });
+    /**
+     * Compile-time indexes generated by {@code eventbus.processor.SubscriberIndexProcessor}, looked
+     * up through the class loader of each listener class so indexes of child loaders are found too.
+     */
+    private static final LoadingCache<ClassLoader, ImmutableList<SubscriberIndex>> subscriberIndexesCache =
+            CacheBuilder.newBuilder()
+                    .weakKeys()
+                    .build(
+                            new CacheLoader<ClassLoader, ImmutableList<SubscriberIndex>>() {
+                                @Override
+                                public ImmutableList<SubscriberIndex> load(ClassLoader loader) {
+                                    return ImmutableList.copyOf(ServiceLoader.load(SubscriberIndex.class, loader));
+                                }
+                            });
     /**
      * Global cache of classes to their flattened hierarchy of supertypes.
      */
@@ -57,16 +72,41 @@ final class SubscriberRegistry {
                             });
     /**
      * All registered subscribers, indexed by event type.
-     * <p>The {@link CopyOnWriteArraySet} values make it easy and relatively lightweight to get an
+     * <p>The {@link SubscriberSet} values make it easy and relatively lightweight to get an
      * immutable snapshot of all current subscribers to an event without any locking.
      */
-    private final ConcurrentMap<Class<?>, CopyOnWriteArraySet<Subscriber>> subscribers =
+    private final ConcurrentMap<Class<?>, SubscriberSet> subscribers =
             Maps.newConcurrentMap();
+    /**
+     * The subscribers of each registered listener, grouped by event type, so unregistering needs no
+     * reflection. Keys are compared by identity and held weakly, like weakly registered listeners.
+     */
+    private final ConcurrentMap<Object, Multimap<Class<?>, Subscriber>> listeners =
+            new MapMaker().weakKeys().makeMap();
+    /**
+     * Number of registered subscribers per subject or wildcard pattern, without zero entries, so
+     * {@link #hasSubscribers(String)} needs no scan of the subscriber sets.
+     */
+    private final ConcurrentMap<String, Integer> subjectCounts = Maps.newConcurrentMap();
+    /**
+     * Precomputed subscribers indexed by subject and concrete event class.
+     * <p>A fresh index is published after every {@link #register}/{@link #unregister}, so a lookup
+     * that raced with a mutation can only ever populate an index that is already discarded.
+     */
+    private volatile DispatchIndex dispatchIndex = new DispatchIndex(SubjectTrie.EMPTY);
+    /**
+     * Number of subscribers of weakly registered listeners removed after the listeners were collected.
+     */
+    private final LongAdder purgedSubscribers = new LongAdder();
     /**
      * The event bus this registry belongs to.
      */
     @Weak
     private final EventBusImpl bus;
+    /**
+     * Weak reference to this registry, through which the {@link SubscriberCleaner} reaches it.
+     */
+    private final WeakReference<SubscriberRegistry> weakReference = new WeakReference<>(this);
 
     SubscriberRegistry(EventBusImpl bus) {
         this.bus = Preconditions.checkNotNull(bus);
@@ -77,33 +117,104 @@ final class SubscriberRegistry {
     }
 
     private static ImmutableList<Method> getAnnotatedMethodsNotCached(Class<?> clazz) {
-        Set<? extends Class<?>> supertypes = TypeToken.of(clazz).getTypes().rawTypes();
         Map<MethodIdentifier, Method> identifiers = Maps.newHashMap();
-        for (Class<?> supertype : supertypes) {
-            for (Method method : supertype.getDeclaredMethods()) {
-                if (method.isAnnotationPresent(Subscribe.class)
-                        || method.isAnnotationPresent(ParSubscribe.class)) {
-                    if (!method.isSynthetic()) {
-                        Class<?>[] parameterTypes = method.getParameterTypes();
-                        Preconditions.checkArgument(
-                                parameterTypes.length == 1,
-                                "Method %s has @Subscribe annotation but has %s parameters."
-                                        + "Subscriber methods must have exactly 1 parameter.",
-                                method,
-                                parameterTypes.length);
-
-                        MethodIdentifier ident = new MethodIdentifier(method);
-                        if (!identifiers.containsKey(ident)) {
-                            identifiers.put(ident, method);
-                        }
-                    }
+        List<Class<?>> hierarchy = getIndexedHierarchy(clazz);
+        for (Class<?> supertype : hierarchy != null ? hierarchy : flattenHierarchy(clazz)) {
+            ImmutableList<Method> declared = getIndexedMethods(supertype);
+            for (Method method : declared != null ? declared : getDeclaredSubscriberMethods(supertype)) {
+                MethodIdentifier ident = new MethodIdentifier(method);
+                if (!identifiers.containsKey(ident)) {
+                    identifiers.put(ident, method);
                 }
-
             }
         }
         return ImmutableList.copyOf(identifiers.values());
     }
 
+    /**
+     * Finds the subscriber methods {@code clazz} itself declares by reflection.
+     */
+    private static List<Method> getDeclaredSubscriberMethods(Class<?> clazz) {
+        List<Method> result = Lists.newArrayList();
+        for (Method method : clazz.getDeclaredMethods()) {
+            if ((method.isAnnotationPresent(Subscribe.class) || method.isAnnotationPresent(ParSubscribe.class))
+                    && !method.isSynthetic()) {
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                Preconditions.checkArgument(
+                        parameterTypes.length == 1,
+                        "Method %s has @Subscribe annotation but has %s parameters."
+                                + "Subscriber methods must have exactly 1 parameter.",
+                        method,
+                        parameterTypes.length);
+                result.add(method);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the subscriber methods {@code clazz} declares as recorded in a compile-time index, or
+     * {@code null} if no index knows the class or its entries no longer resolve.
+     */
+    @Nullable
+    private static ImmutableList<Method> getIndexedMethods(Class<?> clazz) {
+        ClassLoader loader = clazz.getClassLoader();
+        if (loader == null) {
+            // bootstrap classes are never indexed
+            return null;
+        }
+        for (SubscriberIndex index : subscriberIndexesCache.getUnchecked(loader)) {
+            SubscriberMethod[] methods = index.lookup(clazz.getName());
+            if (methods == null) {
+                continue;
+            }
+
+            ImmutableList.Builder<Method> result = ImmutableList.builder();
+            try {
+                for (SubscriberMethod method : methods) {
+                    result.add(method.resolve(clazz.getClassLoader()));
+                }
+            } catch (ClassNotFoundException | NoSuchMethodException e) {
+                // stale index, let reflection find the current methods
+                return null;
+            }
+            return result.build();
+        }
+        return null;
+    }
+
+    /**
+     * Returns {@code clazz} followed by the supertypes a compile-time index recorded for it, or
+     * {@code null} if no index knows the class or a recorded supertype no longer loads.
+     * <p>JDK supertypes are not recorded; they never declare subscriber methods.
+     */
+    @Nullable
+    private static List<Class<?>> getIndexedHierarchy(Class<?> clazz) {
+        ClassLoader loader = clazz.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        for (SubscriberIndex index : subscriberIndexesCache.getUnchecked(loader)) {
+            String[] supertypes = index.supertypes(clazz.getName());
+            if (supertypes == null) {
+                continue;
+            }
+
+            List<Class<?>> result = Lists.newArrayListWithCapacity(supertypes.length + 1);
+            result.add(clazz);
+            try {
+                for (String supertype : supertypes) {
+                    result.add(Class.forName(supertype, false, loader));
+                }
+            } catch (ClassNotFoundException e) {
+                // stale index, let the type hierarchy be computed
+                return null;
+            }
+            return result;
+        }
+        return null;
+    }
+
     /**
      * Flattens a class's type hierarchy into a set of {@code Class} objects including all
      * superclasses (transitively) and all interfaces implemented by these superclasses.
@@ -121,105 +232,342 @@ final class SubscriberRegistry {
      * Registers all subscriber methods on the given listener object.
      */
     void register(Object listener) {
-        Multimap<Class<?>, Subscriber> listenerMethods = findAllSubscribers(listener);
+        registerAll(Collections.singleton(listener), false);
+    }
+
+    /**
+     * Registers all subscriber methods on the given listener object, holding the listener only
+     * weakly if {@code weak}.
+     */
+    void register(Object listener, boolean weak) {
+        registerAll(Collections.singleton(listener), weak);
+    }
 
-        for (Entry<Class<?>, Collection<Subscriber>> entry : listenerMethods.asMap().entrySet()) {
+    /**
+     * Registers all subscriber methods on each of {@code listeners}, holding them only weakly if
+     * {@code weak}. Listeners already registered are skipped. Each affected subscriber set and the
+     * dispatch index are republished once for the whole batch.
+     */
+    void registerAll(Iterable<?> listeners, boolean weak) {
+        Multimap<Class<?>, Subscriber> added = ArrayListMultimap.create();
+        for (Object listener : listeners) {
+            if (this.listeners.containsKey(listener)) {
+                continue;
+            }
+            Multimap<Class<?>, Subscriber> listenerMethods = findAllSubscribers(listener, weak);
+            if (this.listeners.putIfAbsent(listener, listenerMethods) == null) {
+                added.putAll(listenerMethods);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+
+        boolean patternsChanged = false;
+        for (Entry<Class<?>, Collection<Subscriber>> entry : added.asMap().entrySet()) {
             Class<?> eventType = entry.getKey();
-            Collection<Subscriber> eventMethodsInListener = entry.getValue();
+            Collection<Subscriber> eventMethodsInListeners = entry.getValue();
 
-            CopyOnWriteArraySet<Subscriber> eventSubscribers = subscribers.get(eventType);
+            SubscriberSet eventSubscribers = subscribers.get(eventType);
 
             if (eventSubscribers == null) {
-                CopyOnWriteArraySet<Subscriber> newSet = new CopyOnWriteArraySet<>();
+                SubscriberSet newSet = new SubscriberSet();
                 eventSubscribers =
                         MoreObjects.firstNonNull(subscribers.putIfAbsent(eventType, newSet), newSet);
             }
 
-            eventSubscribers.addAll(eventMethodsInListener);
+            eventSubscribers.addAll(eventMethodsInListeners);
+            patternsChanged |= hasPatternSubject(eventMethodsInListeners);
         }
+        // listeners are new, so every one of their subscribers was added
+        countSubjects(added.values(), 1);
+        invalidateDispatchIndex(patternsChanged);
     }
 
     /**
      * Unregisters all subscribers on the given listener object.
      */
     void unregister(Object listener) {
-        Multimap<Class<?>, Subscriber> listenerMethods = findAllSubscribers(listener);
+        unregisterAll(Collections.singleton(listener));
+    }
 
-        for (Entry<Class<?>, Collection<Subscriber>> entry : listenerMethods.asMap().entrySet()) {
-            Class<?> eventType = entry.getKey();
-            Collection<Subscriber> listenerMethodsForType = entry.getValue();
-
-            CopyOnWriteArraySet<Subscriber> currentSubscribers = subscribers.get(eventType);
-            if (currentSubscribers == null || !currentSubscribers.removeAll(listenerMethodsForType)) {
-                // if removeAll returns true, all we really know is that at least one subscriber was
-                // removed... however, barring something very strange we can assume that if at least one
-                // subscriber was removed, all subscribers on listener for that event type were... after
-                // all, the definition of subscribers on a particular class is totally static
+    /**
+     * Unregisters all subscribers on each of {@code listeners}, republishing each affected subscriber
+     * set and the dispatch index once for the whole batch.
+     *
+     * @throws IllegalArgumentException if a listener with subscriber methods is not registered, in
+     *                                  which case none of {@code listeners} is unregistered
+     */
+    void unregisterAll(Iterable<?> listeners) {
+        for (Object listener : listeners) {
+            if (!this.listeners.containsKey(listener) && !getAnnotatedMethods(listener.getClass()).isEmpty()) {
                 throw new IllegalArgumentException(
                         "missing event subscriber for an annotated method. Is " + listener + " registered?");
             }
+        }
+
+        Multimap<Class<?>, Subscriber> removed = HashMultimap.create();
+        for (Object listener : listeners) {
+            Multimap<Class<?>, Subscriber> listenerMethods = this.listeners.remove(listener);
+            if (listenerMethods != null) {
+                removed.putAll(listenerMethods);
+            }
+        }
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        boolean patternsChanged = false;
+        for (Entry<Class<?>, Collection<Subscriber>> entry : removed.asMap().entrySet()) {
+            SubscriberSet currentSubscribers = subscribers.get(entry.getKey());
+            if (currentSubscribers != null) {
+                // don't try to remove the set if it's empty; that can't be done safely without a lock
+                // anyway, if the set is empty it'll just be wrapping an array of length 0
+                countSubjects(currentSubscribers.removeAll(entry.getValue()), -1);
+            }
+            patternsChanged |= hasPatternSubject(entry.getValue());
+        }
+        invalidateDispatchIndex(patternsChanged);
+    }
+
+    /**
+     * Removes {@code collected} subscribers, whose weakly held listeners were garbage collected, with
+     * one copy of each affected subscriber set.
+     */
+    void purge(Collection<Subscriber> collected) {
+        Multimap<Class<?>, Subscriber> byType = HashMultimap.create();
+        for (Subscriber subscriber : collected) {
+            byType.put(subscriber.getEventType(), subscriber);
+        }
+        int purged = 0;
+        for (Entry<Class<?>, Collection<Subscriber>> entry : byType.asMap().entrySet()) {
+            SubscriberSet eventSubscribers = subscribers.get(entry.getKey());
+            if (eventSubscribers != null) {
+                // nothing is removed if the listener was unregistered before it was collected
+                List<Subscriber> removed = eventSubscribers.removeAll(entry.getValue());
+                countSubjects(removed, -1);
+                purged += removed.size();
+            }
+        }
+        if (purged > 0) {
+            purgedSubscribers.add(purged);
+            invalidateDispatchIndex(hasPatternSubject(collected));
+            bus.subscriptionsChanged();
+        }
+    }
+
+    WeakReference<SubscriberRegistry> weakReference() {
+        return weakReference;
+    }
+
+    /**
+     * Returns the number of subscribers purged after their weakly registered listeners were collected.
+     */
+    long getPurgedCount() {
+        return purgedSubscribers.sum();
+    }
+
+    /**
+     * Adds {@code delta} to the count of each subscriber's subject, dropping counts that reach zero.
+     */
+    private void countSubjects(Collection<Subscriber> changed, int delta) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> deltas = Maps.newHashMap();
+        for (Subscriber subscriber : changed) {
+            deltas.merge(subscriber.getSubject(), delta, Integer::sum);
+        }
+        for (Entry<String, Integer> entry : deltas.entrySet()) {
+            subjectCounts.merge(entry.getKey(), entry.getValue(), (count, change) -> {
+                int result = count + change;
+                return result == 0 ? null : result;
+            });
+        }
+    }
+
+    private static boolean hasPatternSubject(Collection<Subscriber> subscribers) {
+        for (Subscriber subscriber : subscribers) {
+            if (SubjectTrie.isPattern(subscriber.getSubject())) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            // don't try to remove the set if it's empty; that can't be done safely without a lock
-            // anyway, if the set is empty it'll just be wrapping an array of length 0
+    /**
+     * Drops every precomputed subscriber array; they are rebuilt lazily on the next post. The
+     * wildcard trie is recompiled from the current subscribers if {@code patternsChanged}.
+     * <p>Synchronized so that the last invalidation always observes every preceding mutation.
+     */
+    private synchronized void invalidateDispatchIndex(boolean patternsChanged) {
+        SubjectTrie patterns = dispatchIndex.patterns;
+        if (patternsChanged) {
+            List<String> subjects = Lists.newArrayList();
+            for (SubscriberSet eventSubscribers : subscribers.values()) {
+                for (Subscriber subscriber : eventSubscribers.snapshot()) {
+                    if (SubjectTrie.isPattern(subscriber.getSubject())) {
+                        subjects.add(subscriber.getSubject());
+                    }
+                }
+            }
+            patterns = SubjectTrie.compile(subjects);
         }
+        dispatchIndex = new DispatchIndex(patterns);
     }
 
     @VisibleForTesting
     Set<Subscriber> getSubscribersForTesting(Class<?> eventType) {
-        return MoreObjects.firstNonNull(subscribers.get(eventType), ImmutableSet.of());
+        SubscriberSet eventSubscribers = subscribers.get(eventType);
+        return eventSubscribers == null ? ImmutableSet.of() : ImmutableSet.copyOf(eventSubscribers.snapshot());
     }
 
     /**
-     * Gets an iterator representing an immutable snapshot of all subscribers to the given event at
-     * the time this method is called.
+     * Gets an immutable snapshot of all subscribers to the given event at the time this method is
+     * called.
      */
-    Iterator<Subscriber> getSubscribers(Object event) {
+    Subscriber[] getSubscribers(Object event) {
         return getSubscribers(EventBusImpl.DEFAULT_SUBJECT, event);
     }
 
     /**
-     * Gets an iterator representing an immutable snapshot of all subscribers to the given event at
-     * the time this method is called.
+     * Gets an immutable snapshot of all subscribers to the given event at the time this method is
+     * called. The returned array is shared and must not be modified.
      */
-    Iterator<Subscriber> getSubscribers(String subject, Object event) {
-        ImmutableSet<Class<?>> eventTypes = flattenHierarchy(event.getClass());
-
-        List<Iterator<Subscriber>> subscriberIterators =
-                Lists.newArrayListWithCapacity(eventTypes.size());
+    Subscriber[] getSubscribers(String subject, Object event) {
+        return getSubscribers(subject, event.getClass());
+    }
 
-        for (Class<?> eventType : eventTypes) {
-            CopyOnWriteArraySet<Subscriber> eventSubscribers = subscribers.get(eventType);
-            if (eventSubscribers != null) {
-                Iterator<Subscriber> subs = eventSubscribers.stream()
-                        .filter(subscriber -> {
-                            if (Strings.isNullOrEmpty(subscriber.getSubject())) {
-                                return false;
-                            }
+    /**
+     * Gets an immutable snapshot of all subscribers to events of {@code eventClass}. Empty results
+     * are cached like any other until the next registration change, so posting to a subject nobody
+     * listens on costs a single map lookup.
+     */
+    Subscriber[] getSubscribers(String subject, Class<?> eventClass) {
+        DispatchIndex index = dispatchIndex;
+        Subscriber[] result = index.get(subject, eventClass);
+        if (result == null) {
+            result = index.put(subject, eventClass,
+                    computeSubscribers(subject, index.matchingPatterns(subject), eventClass));
+        }
+        return result;
+    }
 
-                            return subject.equals(subscriber.getSubject());
-                        }).iterator();
-                // eager no-copy snapshot
-                subscriberIterators.add(subs);
+    /**
+     * Returns whether any subscriber, of any event type, listens on {@code subject} or on a wildcard
+     * matching it. Subscribers of collected listeners count until they are purged.
+     */
+    boolean hasSubscribers(String subject) {
+        if (subjectCounts.containsKey(subject)) {
+            return true;
+        }
+        for (String pattern : dispatchIndex.matchingPatterns(subject)) {
+            if (subjectCounts.containsKey(pattern)) {
+                return true;
             }
         }
+        return false;
+    }
 
-        return Iterators.concat(subscriberIterators.iterator());
+    /**
+     * Collects the subscribers of every type in the hierarchy of {@code eventClass} that listen on
+     * {@code subject} or on one of the wildcard {@code patterns} matching it, highest priority first.
+     */
+    private Subscriber[] computeSubscribers(String subject, Set<String> patterns, Class<?> eventClass) {
+        List<Subscriber> result = Lists.newArrayList();
+        for (Class<?> eventType : flattenHierarchy(eventClass)) {
+            SubscriberSet eventSubscribers = subscribers.get(eventType);
+            if (eventSubscribers != null) {
+                for (Subscriber subscriber : eventSubscribers.snapshot()) {
+                    // collected subscribers awaiting purge are left out of new snapshots
+                    if ((subject.equals(subscriber.getSubject()) || patterns.contains(subscriber.getSubject()))
+                            && !subscriber.isCollected()) {
+                        result.add(subscriber);
+                    }
+                }
+            }
+        }
+        if (result.isEmpty()) {
+            return DispatchIndex.NO_SUBSCRIBERS;
+        }
+        Subscriber[] array = result.toArray(new Subscriber[0]);
+        // stable, so subscribers of equal priority keep their registration order
+        Arrays.sort(array, Subscriber.BY_PRIORITY);
+        return array;
     }
 
     /**
      * Returns all subscribers for the given listener grouped by the type of event they subscribe to.
      */
-    private Multimap<Class<?>, Subscriber> findAllSubscribers(Object listener) {
+    private Multimap<Class<?>, Subscriber> findAllSubscribers(Object listener, boolean weak) {
         Multimap<Class<?>, Subscriber> methodsInListener = HashMultimap.create();
         Class<?> clazz = listener.getClass();
         for (Method method : getAnnotatedMethods(clazz)) {
             Class<?>[] parameterTypes = method.getParameterTypes();
             Class<?> eventType = parameterTypes[0];
-            methodsInListener.put(eventType, Subscriber.create(bus, listener, method));
+            methodsInListener.put(eventType, Subscriber.create(bus, listener, method, weak ? this : null));
         }
         return methodsInListener;
     }
 
+    /**
+     * Immutable subscriber arrays keyed by subject and then by concrete event class. Nesting the
+     * maps keeps lookups free of composite-key allocation.
+     * <p>Subjects such as {@code robot.<id>.pose} can be unbounded when only wildcards listen on
+     * them, so each cache holds at most {@link #MAX_CACHED_SUBJECTS} subjects and is emptied when it
+     * would grow beyond that; hot subjects are cached again on their next post.
+     */
+    private static final class DispatchIndex {
+        static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+        private static final int MAX_CACHED_SUBJECTS = 4096;
+
+        /**
+         * Wildcard subjects of all registered subscribers.
+         */
+        final SubjectTrie patterns;
+        private final ConcurrentMap<String, ConcurrentMap<Class<?>, Subscriber[]>> index =
+                Maps.newConcurrentMap();
+        /**
+         * Wildcard subjects matching each concrete subject posted so far.
+         */
+        private final ConcurrentMap<String, ImmutableSet<String>> matchingPatterns = Maps.newConcurrentMap();
+
+        DispatchIndex(SubjectTrie patterns) {
+            this.patterns = patterns;
+        }
+
+        ImmutableSet<String> matchingPatterns(String subject) {
+            ImmutableSet<String> result = matchingPatterns.get(subject);
+            if (result == null) {
+                result = patterns.match(subject);
+                if (matchingPatterns.size() >= MAX_CACHED_SUBJECTS) {
+                    matchingPatterns.clear();
+                }
+                matchingPatterns.putIfAbsent(subject, result);
+            }
+            return result;
+        }
+
+        @Nullable
+        Subscriber[] get(String subject, Class<?> eventClass) {
+            ConcurrentMap<Class<?>, Subscriber[]> byClass = index.get(subject);
+            return byClass == null ? null : byClass.get(eventClass);
+        }
+
+        Subscriber[] put(String subject, Class<?> eventClass, Subscriber[] eventSubscribers) {
+            ConcurrentMap<Class<?>, Subscriber[]> byClass = index.get(subject);
+            if (byClass == null) {
+                if (index.size() >= MAX_CACHED_SUBJECTS) {
+                    index.clear();
+                }
+                ConcurrentMap<Class<?>, Subscriber[]> newMap = Maps.newConcurrentMap();
+                byClass = MoreObjects.firstNonNull(index.putIfAbsent(subject, newMap), newMap);
+            }
+            return MoreObjects.firstNonNull(byClass.putIfAbsent(eventClass, eventSubscribers),
+                    eventSubscribers);
+        }
+    }
+
     private static final class MethodIdentifier {
 
         private final String name;
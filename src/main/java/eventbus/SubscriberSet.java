@@ -0,0 +1,105 @@
+package eventbus;
+
+import com.google.common.collect.Sets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Copy-on-write set of the subscribers to one event type. Readers get the current array without
+ * locking; every mutation publishes exactly one new array, however many subscribers it adds or
+ * removes, so a bulk registration of {@code m} subscribers costs {@code O(n + m)} instead of the
+ * {@code O(n * m)} of {@link java.util.concurrent.CopyOnWriteArraySet#addAll}.
+ *
+ * @author wuyongkang
+ */
+final class SubscriberSet {
+    private static final Subscriber[] EMPTY = new Subscriber[0];
+    /**
+     * Largest number of added subscribers checked for duplicates by a linear scan rather than
+     * through a hash set of the present ones.
+     */
+    private static final int SCAN_THRESHOLD = 8;
+
+    private volatile Subscriber[] snapshot = EMPTY;
+
+    /**
+     * Returns the current subscribers, in registration order. The array is shared and must not be
+     * modified.
+     */
+    Subscriber[] snapshot() {
+        return snapshot;
+    }
+
+    boolean isEmpty() {
+        return snapshot.length == 0;
+    }
+
+    /**
+     * Adds the {@code added} subscribers not already present.
+     *
+     * @return the number of subscribers added
+     */
+    synchronized int addAll(Collection<Subscriber> added) {
+        Subscriber[] current = snapshot;
+        Subscriber[] result = Arrays.copyOf(current, current.length + added.size());
+        int size = current.length;
+        if (added.size() <= SCAN_THRESHOLD) {
+            for (Subscriber subscriber : added) {
+                if (indexOf(result, size, subscriber) < 0) {
+                    result[size++] = subscriber;
+                }
+            }
+        } else {
+            Set<Subscriber> present = Sets.newHashSet(Arrays.asList(current));
+            for (Subscriber subscriber : added) {
+                if (present.add(subscriber)) {
+                    result[size++] = subscriber;
+                }
+            }
+        }
+        if (size != current.length) {
+            snapshot = size == result.length ? result : Arrays.copyOf(result, size);
+        }
+        return size - current.length;
+    }
+
+    /**
+     * Removes the subscribers contained in {@code removed}, which should be a set if large.
+     *
+     * @return the subscribers actually removed
+     */
+    synchronized List<Subscriber> removeAll(Collection<Subscriber> removed) {
+        Subscriber[] current = snapshot;
+        Subscriber[] result = new Subscriber[current.length];
+        List<Subscriber> found = Collections.emptyList();
+        int size = 0;
+        for (Subscriber subscriber : current) {
+            if (!removed.contains(subscriber)) {
+                result[size++] = subscriber;
+            } else {
+                if (found.isEmpty()) {
+                    found = new ArrayList<>();
+                }
+                found.add(subscriber);
+            }
+        }
+        if (size != current.length) {
+            snapshot = size == 0 ? EMPTY : Arrays.copyOf(result, size);
+        }
+        return found;
+    }
+
+    private static int indexOf(Subscriber[] subscribers, int size, Subscriber subscriber) {
+        for (int i = 0; i < size; i++) {
+            if (subscribers[i].equals(subscriber)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
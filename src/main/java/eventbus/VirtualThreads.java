@@ -0,0 +1,111 @@
+package eventbus;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads on runtimes that have them. The methods are looked up once through
+ * method handles, so this class compiles against and runs on the Java 8 baseline, where
+ * {@link #isSupported()} simply returns {@code false}.
+ *
+ * @author wuyongkang
+ */
+final class VirtualThreads {
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, or {@code null} before Java 21.
+     */
+    @Nullable
+    private static final MethodHandle NEW_EXECUTOR =
+            findStatic(Executors.class, "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+    /**
+     * {@code Thread.isVirtual()}, or {@code null} before Java 21.
+     */
+    @Nullable
+    private static final MethodHandle IS_VIRTUAL =
+            findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+
+    private VirtualThreads() {
+    }
+
+    @Nullable
+    private static MethodHandle findStatic(Class<?> owner, String name, MethodType type) {
+        try {
+            return MethodHandles.publicLookup().findStatic(owner, name, type);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    @Nullable
+    private static MethodHandle findVirtual(Class<?> owner, String name, MethodType type) {
+        try {
+            return MethodHandles.publicLookup().findVirtual(owner, name, type);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns whether this runtime can start virtual threads.
+     */
+    static boolean isSupported() {
+        return NEW_EXECUTOR != null && IS_VIRTUAL != null;
+    }
+
+    /**
+     * Returns an executor starting one virtual thread per task.
+     *
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    static Executor newExecutor() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+        try {
+            return new VirtualThreadExecutor((ExecutorService) NEW_EXECUTOR.invokeExact());
+        } catch (Throwable e) {
+            Throwables.throwIfUnchecked(e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns whether {@code thread} is a virtual thread.
+     */
+    static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            Throwables.throwIfUnchecked(e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Executor created by {@link #newExecutor()}, recognized by {@link EventBusImpl} to enable
+     * pinning diagnostics.
+     */
+    static final class VirtualThreadExecutor implements Executor {
+        private final ExecutorService delegate;
+
+        private VirtualThreadExecutor(ExecutorService delegate) {
+            this.delegate = Preconditions.checkNotNull(delegate);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(command);
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package eventbus.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Annotation processor that records the {@code @Subscribe} and {@code @ParSubscribe} methods each
+ * class in the compilation declares into a generated {@code eventbus.SubscriberIndex}, along with
+ * the supertypes of every class that declares or inherits subscriber methods. The index is
+ * registered as a service so {@code SubscriberRegistry} picks it up without any configuration.
+ * <p>Only declared methods are recorded, so an index stays valid when a supertype from another
+ * artifact changes; the registry walks the recorded supertypes at run time instead of computing
+ * the hierarchy, using each supertype's own index or reflection for classes that were not indexed.
+ * JDK supertypes are left out, since they never declare subscribers.
+ * <p>The processor is registered as a service of this artifact and runs whenever it is on the
+ * compile class path; disable it with {@code -proc:none}. The generated class name can be chosen
+ * with {@code -Aeventbus.index=com.example.MySubscriberIndex} and should be unique per artifact.
+ *
+ * @author wuyongkang
+ */
+@SupportedAnnotationTypes({
+        SubscriberIndexProcessor.SUBSCRIBE,
+        SubscriberIndexProcessor.PAR_SUBSCRIBE,
+        SubscriberIndexProcessor.SUBJECT})
+@SupportedOptions(SubscriberIndexProcessor.OPTION_INDEX)
+public class SubscriberIndexProcessor extends AbstractProcessor {
+    static final String OPTION_INDEX = "eventbus.index";
+    private static final String DEFAULT_INDEX = "eventbus.generated.GeneratedSubscriberIndex";
+    static final String SUBSCRIBE = "eventbus.Subscribe";
+    static final String PAR_SUBSCRIBE = "eventbus.ParSubscribe";
+    static final String SUBJECT = "eventbus.Subject";
+    private static final String SERVICE_FILE = "META-INF/services/eventbus.SubscriberIndex";
+
+    /**
+     * Declared subscriber methods indexed by the binary name of the declaring class.
+     */
+    private final Map<String, List<String[]>> index = new LinkedHashMap<>();
+    /**
+     * Binary names of the non-JDK supertypes of each indexed class, nearest first.
+     */
+    private final Map<String, List<String>> supertypes = new LinkedHashMap<>();
+    private boolean written;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (written) {
+            return false;
+        }
+
+        for (TypeElement annotation : annotations) {
+            for (ExecutableElement method : ElementFilter.methodsIn(roundEnv.getElementsAnnotatedWith(annotation))) {
+                checkSubject(method);
+            }
+        }
+        List<TypeElement> types = new ArrayList<>();
+        collectTypes(ElementFilter.typesIn(roundEnv.getRootElements()), types);
+        // supertypes from this round are indexed even without subscribers, so the registry needs no
+        // reflection to learn that they declare none
+        Map<TypeElement, List<TypeElement>> hierarchies = new LinkedHashMap<>();
+        Set<TypeElement> indexed = new LinkedHashSet<>();
+        for (TypeElement type : types) {
+            List<TypeElement> hierarchy = flattenSupertypes(type);
+            hierarchies.put(type, hierarchy);
+            if (!findSubscriberMethods(type).isEmpty() || inheritsSubscribers(hierarchy)) {
+                indexed.add(type);
+                indexed.addAll(hierarchy);
+            }
+        }
+        for (TypeElement type : types) {
+            if (indexed.contains(type)) {
+                List<String> names = new ArrayList<>();
+                for (TypeElement supertype : hierarchies.get(type)) {
+                    names.add(binaryName(supertype));
+                }
+                index.put(binaryName(type), findSubscriberMethods(type));
+                supertypes.put(binaryName(type), names);
+            }
+        }
+
+        if (!index.isEmpty() && !roundEnv.errorRaised()) {
+            write();
+            written = true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds {@code roots} and their nested types, leaving out annotation types.
+     */
+    private static void collectTypes(Iterable<TypeElement> roots, List<TypeElement> types) {
+        for (TypeElement type : roots) {
+            if (type.getKind() != ElementKind.ANNOTATION_TYPE) {
+                types.add(type);
+            }
+            collectTypes(ElementFilter.typesIn(type.getEnclosedElements()), types);
+        }
+    }
+
+    /**
+     * Returns the superclasses of {@code type} and all interfaces they implement, nearest first,
+     * leaving out JDK types.
+     */
+    private List<TypeElement> flattenSupertypes(TypeElement type) {
+        Set<TypeElement> result = new LinkedHashSet<>();
+        List<TypeElement> pending = new ArrayList<>();
+        addSupertypes(type, pending);
+        while (!pending.isEmpty()) {
+            TypeElement next = pending.remove(0);
+            String name = next.getQualifiedName().toString();
+            if (name.startsWith("java.") || name.startsWith("javax.") || !result.add(next)) {
+                continue;
+            }
+            addSupertypes(next, pending);
+        }
+        return new ArrayList<>(result);
+    }
+
+    private static void addSupertypes(TypeElement type, List<TypeElement> pending) {
+        if (type.getSuperclass().getKind() == TypeKind.DECLARED) {
+            pending.add((TypeElement) ((DeclaredType) type.getSuperclass()).asElement());
+        }
+        for (TypeMirror iface : type.getInterfaces()) {
+            pending.add((TypeElement) ((DeclaredType) iface).asElement());
+        }
+    }
+
+    private static boolean inheritsSubscribers(List<TypeElement> hierarchy) {
+        for (TypeElement supertype : hierarchy) {
+            for (ExecutableElement method : ElementFilter.methodsIn(supertype.getEnclosedElements())) {
+                if (hasAnnotation(method, SUBSCRIBE) || hasAnnotation(method, PAR_SUBSCRIBE)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String binaryName(TypeElement type) {
+        return processingEnv.getElementUtils().getBinaryName(type).toString();
+    }
+
+    /**
+     * Returns the subscriber methods {@code type} declares, in declaration order.
+     */
+    private List<String[]> findSubscriberMethods(TypeElement type) {
+        String declaringClass = binaryName(type);
+        List<String[]> result = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!hasAnnotation(method, SUBSCRIBE) && !hasAnnotation(method, PAR_SUBSCRIBE)) {
+                continue;
+            }
+
+            if (method.getParameters().size() != 1) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Method has @Subscribe annotation but has " + method.getParameters().size()
+                                + " parameters. Subscriber methods must have exactly 1 parameter.",
+                        method);
+                continue;
+            }
+
+            result.add(new String[]{
+                    declaringClass,
+                    method.getSimpleName().toString(),
+                    runtimeName(method.getParameters().get(0).asType())});
+        }
+        return result;
+    }
+
+    /**
+     * Warns about {@code @Subject} on methods that are not subscribers, since it would be ignored.
+     */
+    private void checkSubject(ExecutableElement method) {
+        if (hasAnnotation(method, SUBJECT)
+                && !hasAnnotation(method, SUBSCRIBE)
+                && !hasAnnotation(method, PAR_SUBSCRIBE)) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                    "@Subject has no effect on a method without @Subscribe or @ParSubscribe.", method);
+        }
+    }
+
+    private static boolean hasAnnotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(annotationType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the name {@code Class.forName} resolves to the erasure of {@code type}, or the keyword
+     * for primitives.
+     */
+    private String runtimeName(TypeMirror type) {
+        TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+        if (erased.getKind().isPrimitive()) {
+            return erased.toString();
+        }
+        if (erased.getKind() == TypeKind.ARRAY) {
+            return "[" + descriptor(((ArrayType) erased).getComponentType());
+        }
+        return binaryName(erased);
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Z";
+            case BYTE:
+                return "B";
+            case CHAR:
+                return "C";
+            case SHORT:
+                return "S";
+            case INT:
+                return "I";
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case ARRAY:
+                return "[" + descriptor(((ArrayType) type).getComponentType());
+            default:
+                return "L" + binaryName(processingEnv.getTypeUtils().erasure(type)) + ";";
+        }
+    }
+
+    private String binaryName(TypeMirror type) {
+        return binaryName((TypeElement) processingEnv.getTypeUtils().asElement(type));
+    }
+
+    private void write() {
+        String indexName = processingEnv.getOptions().getOrDefault(OPTION_INDEX, DEFAULT_INDEX);
+        int lastDot = indexName.lastIndexOf('.');
+        String packageName = lastDot > 0 ? indexName.substring(0, lastDot) : null;
+        String simpleName = indexName.substring(lastDot + 1);
+
+        try {
+            JavaFileObject source = processingEnv.getFiler().createSourceFile(indexName);
+            try (PrintWriter out = new PrintWriter(source.openWriter())) {
+                if (packageName != null) {
+                    out.println("package " + packageName + ";");
+                    out.println();
+                }
+                out.println("/**");
+                out.println(" * Generated by " + getClass().getName() + ". Do not edit.");
+                out.println(" */");
+                out.println("public final class " + simpleName + " implements eventbus.SubscriberIndex {");
+                out.println("    private static final java.util.Map<String, eventbus.SubscriberMethod[]> INDEX =");
+                out.println("            new java.util.HashMap<>();");
+                out.println("    private static final java.util.Map<String, String[]> SUPERTYPES =");
+                out.println("            new java.util.HashMap<>();");
+                out.println();
+                out.println("    static {");
+                for (Map.Entry<String, List<String[]>> entry : index.entrySet()) {
+                    out.println("        INDEX.put(" + literal(entry.getKey()) + ", new eventbus.SubscriberMethod[]{");
+                    for (String[] method : entry.getValue()) {
+                        out.println("                new eventbus.SubscriberMethod(" + literal(method[0]) + ", "
+                                + literal(method[1]) + ", " + literal(method[2]) + "),");
+                    }
+                    out.println("        });");
+                    StringBuilder names = new StringBuilder();
+                    for (String supertype : supertypes.get(entry.getKey())) {
+                        names.append(names.length() == 0 ? "" : ", ").append(literal(supertype));
+                    }
+                    out.println("        SUPERTYPES.put(" + literal(entry.getKey()) + ", new String[]{" + names + "});");
+                }
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public eventbus.SubscriberMethod[] lookup(String listenerClassName) {");
+                out.println("        return INDEX.get(listenerClassName);");
+                out.println("    }");
+                out.println();
+                out.println("    @Override");
+                out.println("    public String[] supertypes(String className) {");
+                out.println("        return SUPERTYPES.get(className);");
+                out.println("    }");
+                out.println("}");
+            }
+
+            FileObject service = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (Writer out = service.openWriter()) {
+                out.write(indexName);
+                out.write('\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write subscriber index " + indexName + ": " + e);
+        }
+    }
+
+    private static String literal(String value) {
+        return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -32,11 +32,10 @@ public class RobotDataFrameDecoder extends ByteToMessageDecoder {
      */
     protected RobotDataFrame decode(
             @SuppressWarnings("UnusedParameters") ChannelHandlerContext ctx, ByteBuf in) {
-        if (in.readableBytes() < ROBOT_DATA_FRAME_HEADER_SIZE) {
-            return null;
-        }
-
         if (frameLength <= 0) {
+            if (in.readableBytes() < ROBOT_DATA_FRAME_HEADER_SIZE) {
+                return null;
+            }
             frameLength = in.readInt();
             frameType = in.readUnsignedByte();
             payloadLength = frameLength - ROBOT_DATA_FRAME_HEADER_SIZE;
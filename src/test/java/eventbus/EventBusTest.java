@@ -1,9 +1,42 @@
 package eventbus;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.MoreExecutors;
 import junit.framework.TestCase;
 
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EventListener;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 /**
  * @author wuyongkang
@@ -35,6 +68,784 @@ public class EventBusTest extends TestCase {
         bus.post("test2", new PullNewMessageEvent(10));
     }
 
+    public void testRegisterAfterPost() {
+        CountingListener listener = new CountingListener();
+        bus.post("test3", "before register");
+        bus.register(listener);
+        bus.post("test3", "after register");
+        bus.unregister(listener);
+        bus.post("test3", "after unregister");
+        assertEquals(1, listener.count);
+    }
+
+    public void testSubscriberExceptionHandled() {
+        List<Throwable> errors = new ArrayList<>();
+        EventBus failingBus = new EventBusImpl(MoreExecutors.directExecutor(),
+                (exception, context) -> errors.add(exception));
+        failingBus.register(new FailingListener());
+        failingBus.post("test4", "boom");
+        assertEquals(1, errors.size());
+        assertEquals("boom", errors.get(0).getMessage());
+    }
+
+    public void testRingBufferPostAsync() throws InterruptedException {
+        RingBufferDispatcher ringBuffer = RingBufferDispatcher.create(
+                8, 2, RingBufferDispatcher.ProducerType.MULTI, RingBufferDispatcher.WaitStrategy.YIELD);
+        EventBus ringBus = new EventBusImpl("ring", MoreExecutors.directExecutor(), ringBuffer);
+        CountDownLatch latch = new CountDownLatch(1000);
+        ringBus.register(new LatchListener(latch));
+        try {
+            for (int i = 0; i < 1000; i++) {
+                ringBus.post("test5", i, false);
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            ringBuffer.shutdown();
+        }
+    }
+
+    public void testRingBufferSingleProducerRejectsOtherThreads() throws Exception {
+        RingBufferDispatcher ringBuffer = RingBufferDispatcher.create(
+                8, 1, RingBufferDispatcher.ProducerType.SINGLE, RingBufferDispatcher.WaitStrategy.YIELD);
+        EventBus ringBus = new EventBusImpl("ring", MoreExecutors.directExecutor(), ringBuffer);
+        CountDownLatch latch = new CountDownLatch(2);
+        ringBus.register(new LatchListener(latch));
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            ringBus.post("test5", 1, false);
+            try {
+                other.submit(() -> ringBus.post("test5", 2, false)).get();
+                fail("a second producer thread should be rejected");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            ringBus.post("test5", 3, false);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } finally {
+            other.shutdown();
+            ringBuffer.shutdown();
+        }
+    }
+
+    public void testRingBufferFanOutWiderThanRing() throws InterruptedException {
+        RingBufferDispatcher ringBuffer = RingBufferDispatcher.create(
+                2, 2, RingBufferDispatcher.ProducerType.SINGLE, RingBufferDispatcher.WaitStrategy.YIELD);
+        EventBus ringBus = new EventBusImpl("ring", MoreExecutors.directExecutor(), ringBuffer);
+        CountDownLatch latch = new CountDownLatch(5 * 100);
+        for (int i = 0; i < 5; i++) {
+            ringBus.register(new LatchListener(latch));
+        }
+        SerialListener serial = new SerialListener(new CountDownLatch(100));
+        ringBus.register(serial);
+        try {
+            for (int i = 0; i < 100; i++) {
+                ringBus.post("test5", i, false);
+                ringBus.post("test6", i, false);
+            }
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertTrue(serial.latch.await(10, TimeUnit.SECONDS));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Integer.valueOf(i), serial.received.get(i));
+            }
+        } finally {
+            ringBuffer.shutdown();
+        }
+    }
+
+    public void testRingBufferShutdownFailsPendingPosts() throws Exception {
+        RingBufferDispatcher ringBuffer = RingBufferDispatcher.create(
+                8, 1, RingBufferDispatcher.ProducerType.MULTI, RingBufferDispatcher.WaitStrategy.YIELD);
+        EventBus ringBus = new EventBusImpl("ring", MoreExecutors.directExecutor(), ringBuffer);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ringBus.register(new Object() {
+            @Subject("test5")
+            @ParSubscribe
+            public void onMessage(Integer message) throws InterruptedException {
+                entered.countDown();
+                release.await();
+            }
+        });
+        CompletableFuture<Void> first = ringBus.postAsync("test5", 0);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> pending = ringBus.postAsync("test5", 1);
+        ringBuffer.shutdown();
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        try {
+            pending.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    public void testSerialSubscriberKeepsOrder() throws InterruptedException {
+        SerialListener listener = new SerialListener(new CountDownLatch(500));
+        bus.register(listener);
+        for (int i = 0; i < 500; i++) {
+            bus.post("test6", i, false);
+        }
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        assertFalse(listener.overlapped);
+        for (int i = 0; i < 500; i++) {
+            assertEquals(Integer.valueOf(i), listener.received.get(i));
+        }
+    }
+
+    public void testCallerRunsKeepsSerialOrder() throws InterruptedException {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        EventBusImpl boundedBus = new EventBusImpl("bounded", pool, 4, OverflowPolicy.CALLER_RUNS);
+        SerialListener listener = new SerialListener(new CountDownLatch(2000));
+        boundedBus.register(listener);
+        for (int i = 0; i < 2000; i++) {
+            boundedBus.post("test6", i, false);
+        }
+        assertTrue(listener.latch.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertFalse(listener.overlapped);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(Integer.valueOf(i), listener.received.get(i));
+        }
+    }
+
+    public void testPostAll() {
+        CountingListener listener = new CountingListener();
+        bus.register(listener);
+        bus.postAll("test3", Arrays.asList("a", new StringBuilder("b"), 1, "c"), true);
+        bus.postAll("test3", new Object[]{"d"}, true);
+        assertEquals(4, listener.count);
+    }
+
+    public void testBoundedQueueDropsNewest() {
+        List<Runnable> tasks = new ArrayList<>();
+        EventBusImpl boundedBus = new EventBusImpl("bounded", tasks::add, 2, OverflowPolicy.DROP_NEWEST);
+        CountingListener listener = new CountingListener();
+        boundedBus.register(listener);
+        for (int i = 0; i < 5; i++) {
+            boundedBus.post("test3", "message " + i, false);
+        }
+        tasks.forEach(Runnable::run);
+        assertEquals(2, listener.count);
+        assertEquals(3, boundedBus.getDroppedEventCount("test3"));
+        assertEquals(3, boundedBus.getDroppedEventCount());
+    }
+
+    public void testConflateKeepsLatestPerKey() {
+        List<Runnable> tasks = new ArrayList<>();
+        EventBusImpl conflatingBus = new EventBusImpl(tasks::add);
+        conflatingBus.conflate("test6", event -> (Integer) event % 2);
+        SerialListener listener = new SerialListener(new CountDownLatch(2));
+        conflatingBus.register(listener);
+        for (int i = 0; i < 5; i++) {
+            conflatingBus.post("test6", i, false);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        assertEquals(Arrays.asList(4, 3), listener.received);
+    }
+
+    public void testConflateWildcardKeepsLatestPerSubject() {
+        List<Runnable> tasks = new ArrayList<>();
+        EventBusImpl conflatingBus = new EventBusImpl(tasks::add);
+        conflatingBus.conflate("robot.joint.*");
+        WildcardListener listener = new WildcardListener();
+        conflatingBus.register(listener);
+        conflatingBus.post("robot.joint.1", "a1", false);
+        conflatingBus.post("robot.joint.2", "b1", false);
+        conflatingBus.post("robot.joint.1", "a2", false);
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        assertEquals(Arrays.asList("a2", "b1"), listener.joints);
+    }
+
+    public void testMetrics() {
+        EventBusImpl meteredBus = new EventBusImpl(MoreExecutors.directExecutor(), (exception, context) -> {
+        });
+        assertNull(meteredBus.getMetrics());
+        EventBusMetrics metrics = meteredBus.enableMetrics();
+        meteredBus.register(new FailingListener());
+        meteredBus.post("test4", "boom");
+        meteredBus.post("test4", "boom", false);
+        meteredBus.post("unsubscribed", "nobody");
+
+        List<MetricsSnapshot> reports = new ArrayList<>();
+        metrics.reportTo(reports::add);
+        MetricsSnapshot snapshot = reports.get(0);
+        assertEquals(Long.valueOf(2), snapshot.getPosts().get("test4"));
+        assertEquals(Long.valueOf(1), snapshot.getDeadEvents().get("unsubscribed"));
+        MetricsSnapshot.SubscriberSnapshot subscriber = snapshot.getSubscribers()
+                .get(FailingListener.class.getName() + "#onMessage(java.lang.String)");
+        assertEquals(2, subscriber.getInvocations());
+        assertEquals(2, subscriber.getExceptions());
+        assertEquals(2, subscriber.getLatency().getCount());
+        assertEquals(1, subscriber.getQueueWait().getCount());
+        assertTrue(subscriber.getLatency().getP999() >= subscriber.getLatency().getP50());
+    }
+
+    public void testWildcardSubjects() {
+        EventBusImpl wildcardBus = new EventBusImpl(MoreExecutors.directExecutor());
+        WildcardListener listener = new WildcardListener();
+        wildcardBus.register(listener);
+        wildcardBus.post("robot.joint.1", "a");
+        wildcardBus.post("robot.joint.1.torque", "b");
+        wildcardBus.post("robot", "c");
+        wildcardBus.post("arm.joint.1", "d");
+        assertEquals(Arrays.asList("a"), listener.joints);
+        assertEquals(Arrays.asList("a", "b", "c"), listener.robot);
+
+        wildcardBus.unregister(listener);
+        wildcardBus.post("robot.joint.2", "e");
+        assertEquals(Arrays.asList("a"), listener.joints);
+    }
+
+    public void testPostAsyncCompletesAfterAllSubscribers() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            EventBusImpl futureBus = new EventBusImpl(pool, (exception, context) -> {
+            });
+            CountDownLatch latch = new CountDownLatch(2);
+            futureBus.register(new LatchListener(latch));
+            futureBus.register(new LatchListener(latch));
+            futureBus.postAsync("test5", 1).get(5, TimeUnit.SECONDS);
+            assertEquals(0, latch.getCount());
+
+            futureBus.register(new FailingListener());
+            futureBus.register(new FailingListener());
+            try {
+                futureBus.postAsync("test4", "boom").get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                SubscriberFailureException failure = (SubscriberFailureException) e.getCause();
+                assertEquals(2, failure.getFailures().size());
+                assertEquals(1, failure.getSuppressed().length);
+            }
+            assertTrue(futureBus.postAsync("unsubscribed", "nobody").isDone());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testRequestCollectsReplies() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            EventBusImpl requestBus = new EventBusImpl(pool);
+            requestBus.register(new ReplyingListener(1));
+            requestBus.register(new ReplyingListener(2));
+            requestBus.register(new ReplyingListener(3));
+            requestBus.register(new LatchListener(new CountDownLatch(1)));
+
+            List<Object> replies = requestBus.request("test5", 10).get(5, TimeUnit.SECONDS);
+            assertEquals(3, replies.size());
+            assertTrue(replies.containsAll(Arrays.asList(11, 12, 13)));
+            assertEquals(2, requestBus.request("test5", 10, 2).get(5, TimeUnit.SECONDS).size());
+            assertTrue(Arrays.asList(11, 12, 13).contains(requestBus.requestFirst("test5", 10).get(5, TimeUnit.SECONDS)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testPriorityOrdersDelivery() {
+        List<Runnable> tasks = new ArrayList<>();
+        EventBusImpl priorityBus = new EventBusImpl(tasks::add);
+        PriorityListener listener = new PriorityListener();
+        priorityBus.register(listener);
+        priorityBus.post("test7", "sync");
+        assertEquals(Arrays.asList("critical", "normal", "bulk"), listener.received);
+
+        listener.received.clear();
+        priorityBus.post("test7", "first", false);
+        priorityBus.post("test7", "second", false);
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        assertEquals(Arrays.asList("critical", "critical", "normal", "normal", "bulk", "bulk"), listener.received);
+    }
+
+    public void testShardedDispatcherKeepsOrderPerKey() throws InterruptedException {
+        ShardedDispatcher shards = ShardedDispatcher.create(4, event -> (Integer) event % 3);
+        EventBusImpl shardedBus = new EventBusImpl("sharded", MoreExecutors.directExecutor(), shards);
+        ShardedListener listener = new ShardedListener(new CountDownLatch(300));
+        shardedBus.register(listener);
+        for (int i = 0; i < 300; i++) {
+            shardedBus.post("test8", i, false);
+        }
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        shards.shutdown();
+        for (List<Integer> received : listener.receivedByKey) {
+            assertEquals(100, received.size());
+            for (int i = 1; i < received.size(); i++) {
+                assertTrue(received.get(i - 1) < received.get(i));
+            }
+        }
+    }
+
+    public void testShardedDispatcherKeepsOrderPerKeyForBatches() throws InterruptedException {
+        ShardedDispatcher shards = ShardedDispatcher.create(4, event -> (Integer) event % 3);
+        // a pooled executor would reorder batches if they bypassed the shards
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        EventBusImpl shardedBus = new EventBusImpl("sharded", pool, shards);
+        ShardedListener listener = new ShardedListener(new CountDownLatch(300));
+        shardedBus.register(listener);
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            batch.add(i);
+            if (batch.size() == 30) {
+                shardedBus.postAll("test8", batch, false);
+                batch = new ArrayList<>();
+            }
+        }
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        shards.shutdown();
+        pool.shutdown();
+        for (List<Integer> received : listener.receivedByKey) {
+            assertEquals(100, received.size());
+            for (int i = 1; i < received.size(); i++) {
+                assertTrue(received.get(i - 1) < received.get(i));
+            }
+        }
+    }
+
+    public void testShardedDispatcherKeepsSerialSubscribersInLane() throws InterruptedException {
+        ShardedDispatcher shards = ShardedDispatcher.create(4, event -> (Integer) event % 3);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        EventBusImpl shardedBus = new EventBusImpl("sharded", pool, shards);
+        SerialListener listener = new SerialListener(new CountDownLatch(300));
+        shardedBus.register(listener);
+        for (int i = 0; i < 300; i++) {
+            shardedBus.post("test6", i, false);
+        }
+        assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+        shards.shutdown();
+        pool.shutdown();
+        assertFalse(listener.overlapped);
+        for (int i = 0; i < 300; i++) {
+            assertEquals(Integer.valueOf(i), listener.received.get(i));
+        }
+    }
+
+    public void testVirtualThreads() throws InterruptedException {
+        if (!EventBusImpl.isVirtualThreadsSupported()) {
+            try {
+                EventBusImpl.withVirtualThreads("virtual");
+                fail();
+            } catch (UnsupportedOperationException expected) {
+            }
+            return;
+        }
+
+        EventBusImpl virtualBus = EventBusImpl.withVirtualThreads("virtual");
+        CountDownLatch latch = new CountDownLatch(1000);
+        virtualBus.register(new LatchListener(latch));
+        for (int i = 0; i < 1000; i++) {
+            virtualBus.post("test5", i, false);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testTypedNotificationOnlyReachesListenersOfType() {
+        EventBusImpl notifyingBus = new EventBusImpl(MoreExecutors.directExecutor());
+        List<String> received = new ArrayList<>();
+        JointListener joint = () -> received.add("joint");
+        notifyingBus.register(JointListener.class, joint);
+        notifyingBus.register(AlarmListener.class, () -> received.add("alarm"));
+
+        notifyingBus.post(JointListener.class, JointListener::onJointMoved);
+        assertEquals(Arrays.asList("joint"), received);
+
+        notifyingBus.unregister(JointListener.class, joint);
+        notifyingBus.post(JointListener.class, JointListener::onJointMoved);
+        notifyingBus.post(AlarmListener.class, AlarmListener::onAlarm);
+        assertEquals(Arrays.asList("joint", "alarm"), received);
+    }
+
+    public void testDeadEventsCountedAndWrappedOnlyWhenSubscribed() {
+        EventBusImpl deadBus = new EventBusImpl(MoreExecutors.directExecutor());
+        deadBus.post("debug", "ignored");
+        deadBus.post("debug", "ignored");
+        assertEquals(2, deadBus.getDeadEventCount("debug"));
+
+        DeadEventListener listener = new DeadEventListener();
+        deadBus.register(listener);
+        deadBus.post("debug", "seen");
+        assertEquals(3, deadBus.getDeadEventCount("debug"));
+        assertEquals(Arrays.asList("seen"), listener.received);
+    }
+
+    public void testDeadEventCountsBoundedBySubject() {
+        EventBusImpl deadBus = new EventBusImpl(MoreExecutors.directExecutor());
+        for (int i = 0; i < EventBusImpl.MAX_COUNTED_SUBJECTS + 100; i++) {
+            deadBus.post("dead." + i, "ignored");
+        }
+        assertEquals(EventBusImpl.MAX_COUNTED_SUBJECTS + 1, deadBus.deadEventCounts().size());
+        assertEquals(1, deadBus.getDeadEventCount("dead.0"));
+        assertEquals(100, deadBus.getDeadEventCount(EventBusImpl.OTHER_SUBJECTS));
+    }
+
+    public void testPostCountsBoundedBySubject() {
+        EventBusImpl countedBus = new EventBusImpl(MoreExecutors.directExecutor());
+        EventBusMetrics metrics = countedBus.enableMetrics();
+        for (int i = 0; i < EventBusImpl.MAX_COUNTED_SUBJECTS + 100; i++) {
+            countedBus.post("posted." + i, "ignored");
+        }
+        ImmutableMap<String, Long> posts = metrics.snapshot().getPosts();
+        assertEquals(EventBusImpl.MAX_COUNTED_SUBJECTS + 1, posts.size());
+        assertEquals(Long.valueOf(100), posts.get(EventBusImpl.OTHER_SUBJECTS));
+    }
+
+    public void testStickyEventDeliveredOnRegister() {
+        EventBusImpl stickyBus = new EventBusImpl(MoreExecutors.directExecutor());
+        stickyBus.sticky("test6", 1);
+        stickyBus.post("test6", 1);
+        stickyBus.post("test6", 2);
+        assertEquals(Integer.valueOf(2), stickyBus.getStickyEvent("test6", Integer.class));
+
+        SerialListener listener = new SerialListener(new CountDownLatch(1));
+        stickyBus.register(listener);
+        assertEquals(Arrays.asList(2), listener.received);
+
+        stickyBus.post("test6", "evicts the integer");
+        assertNull(stickyBus.getStickyEvent("test6", Integer.class));
+        assertEquals("evicts the integer", stickyBus.removeStickyEvent("test6", String.class));
+        SerialListener late = new SerialListener(new CountDownLatch(1));
+        stickyBus.register(late);
+        assertTrue(late.received.isEmpty());
+    }
+
+    public void testRegisterAllDeliversStickyEvents() {
+        EventBusImpl stickyBus = new EventBusImpl(MoreExecutors.directExecutor());
+        stickyBus.sticky("test6", 1);
+        stickyBus.post("test6", 7);
+        SerialListener registered = new SerialListener(new CountDownLatch(1));
+        stickyBus.register(registered);
+
+        List<SerialListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            listeners.add(new SerialListener(new CountDownLatch(1)));
+        }
+        stickyBus.registerAll(listeners);
+        for (SerialListener listener : listeners) {
+            assertEquals(Arrays.asList(7), listener.received);
+        }
+        // listeners registered earlier do not get the sticky event again
+        assertEquals(Arrays.asList(7), registered.received);
+    }
+
+    public void testJournalWriterFailureFailsFlush() throws Exception {
+        Path directory = Files.createTempDirectory("eventbus-journal");
+        EventJournal journal = EventJournal.open(directory, 256);
+        journal.registerSerializer(Integer.class, new IntegerSerializer());
+        // writing through the mapping of a truncated segment faults with an InternalError
+        try (Stream<Path> segments = Files.list(directory)) {
+            for (Path segment : (Iterable<Path>) segments::iterator) {
+                try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                    channel.truncate(0);
+                }
+            }
+        }
+        // the fault may surface a little after the faulting write, but it must surface
+        ExecutorService flusher = Executors.newSingleThreadExecutor();
+        try {
+            flusher.submit(() -> {
+                for (int i = 0; ; i++) {
+                    journal.append("test6", i);
+                    journal.flush();
+                }
+            }).get(5, TimeUnit.SECONDS);
+            fail("appending should report the writer failure");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof UncheckedIOException);
+        } finally {
+            flusher.shutdownNow();
+        }
+        try {
+            journal.close();
+            fail("close should report the writer failure");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testJournalReplay() throws Exception {
+        Path directory = Files.createTempDirectory("eventbus-journal");
+        EventJournal journal = EventJournal.open(directory, 256);
+        journal.registerSerializer(Integer.class, new IntegerSerializer());
+        EventBusImpl journaledBus = new EventBusImpl(new ArrayList<Runnable>()::add);
+        journaledBus.setJournal(journal);
+        for (int i = 0; i < 50; i++) {
+            journaledBus.post("test6", i, false);
+        }
+        journaledBus.post("test6", "not journaled", false);
+        journal.flush();
+        long end = journal.getEndOffset();
+        journal.close();
+
+        EventJournal reopened = EventJournal.open(directory, 256);
+        reopened.registerSerializer(Integer.class, new IntegerSerializer());
+        assertEquals(end, reopened.getEndOffset());
+        EventBusImpl restartedBus = new EventBusImpl(MoreExecutors.directExecutor());
+        restartedBus.setJournal(reopened);
+        SerialListener listener = new SerialListener(new CountDownLatch(50));
+        restartedBus.register(listener);
+        assertEquals(end, restartedBus.replayJournal(0));
+        assertEquals(50, listener.received.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals(Integer.valueOf(i), listener.received.get(i));
+        }
+
+        List<Long> offsets = new ArrayList<>();
+        reopened.replay(0, (offset, subject, event) -> offsets.add(offset));
+        List<Object> tail = new ArrayList<>();
+        reopened.replay(offsets.get(40), (offset, subject, event) -> tail.add(event));
+        assertEquals(Arrays.asList(40, 41, 42, 43, 44, 45, 46, 47, 48, 49), tail);
+        reopened.close();
+    }
+
+    public void testSubscriberIndexProcessor() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests need a JDK", compiler);
+        Path directory = Files.createTempDirectory("eventbus-index");
+        Path sources = Files.createDirectories(directory.resolve("src/idx"));
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        Files.write(sources.resolve("Base.java"), Arrays.asList(
+                "package idx;",
+                "public class Base {",
+                "    public final java.util.List<String> received = new java.util.ArrayList<>();",
+                "    @eventbus.Subject(\"test3\") @eventbus.Subscribe",
+                "    public void onBase(String message) { received.add(\"base:\" + message); }",
+                "}"), StandardCharsets.UTF_8);
+        Files.write(sources.resolve("Child.java"), Arrays.asList(
+                "package idx;",
+                "public class Child extends Base implements Marker, java.io.Serializable {",
+                "    @eventbus.Subject(\"test3\") @eventbus.ParSubscribe",
+                "    public void onChild(String message) { received.add(\"child:\" + message); }",
+                "}"), StandardCharsets.UTF_8);
+        Files.write(sources.resolve("Marker.java"), Arrays.asList(
+                "package idx;",
+                "public interface Marker {",
+                "}"), StandardCharsets.UTF_8);
+        Files.write(sources.resolve("Leaf.java"), Arrays.asList(
+                "package idx;",
+                "public class Leaf extends Child {",
+                "}"), StandardCharsets.UTF_8);
+
+        // the processor is found through its service registration on the class path
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        int status = compiler.run(null, null, diagnostics,
+                "-cp", System.getProperty("java.class.path"),
+                "-d", classes.toString(),
+                "-Aeventbus.index=idx.TestSubscriberIndex",
+                sources.resolve("Base.java").toString(),
+                sources.resolve("Child.java").toString(),
+                sources.resolve("Marker.java").toString(),
+                sources.resolve("Leaf.java").toString());
+        assertEquals(diagnostics.toString(), 0, status);
+        assertEquals(Collections.singletonList("idx.TestSubscriberIndex"),
+                Files.readAllLines(classes.resolve("META-INF/services/eventbus.SubscriberIndex")));
+
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes.toUri().toURL()}, getClass().getClassLoader())) {
+            SubscriberIndex index = (SubscriberIndex) loader.loadClass("idx.TestSubscriberIndex").newInstance();
+            // only declared methods, the registry walks the hierarchy
+            assertEquals(1, index.lookup("idx.Child").length);
+            assertEquals(1, index.lookup("idx.Base").length);
+            // classes that only inherit subscribers are indexed with their supertypes, minus JDK types
+            assertEquals(0, index.lookup("idx.Leaf").length);
+            assertEquals(Arrays.asList("idx.Child", "idx.Base", "idx.Marker"), Arrays.asList(index.supertypes("idx.Leaf")));
+            assertEquals(0, index.supertypes("idx.Base").length);
+            // as are supertypes without subscribers, so no reflection is needed for them
+            assertEquals(0, index.lookup("idx.Marker").length);
+
+            Object listener = loader.loadClass("idx.Leaf").newInstance();
+            EventBusImpl indexedBus = new EventBusImpl(MoreExecutors.directExecutor());
+            indexedBus.register(listener);
+            indexedBus.post("test3", "m");
+            List<?> received = (List<?>) listener.getClass().getField("received").get(listener);
+            assertEquals(ImmutableSet.of("base:m", "child:m"), ImmutableSet.copyOf(received));
+        }
+    }
+
+    public void testBridgeForwardsSubscribedSubjectsOnly() throws Exception {
+        EventBusImpl localBus = new EventBusImpl(MoreExecutors.directExecutor());
+        EventBusImpl remoteBus = new EventBusImpl(MoreExecutors.directExecutor());
+        EventBusBridge localBridge = EventBusBridge.create(localBus, ImmutableSet.of("test6", "test8"));
+        EventBusBridge remoteBridge = EventBusBridge.create(remoteBus, ImmutableSet.of("test6", "test8"));
+        localBridge.registerSerializer(Integer.class, new IntegerSerializer());
+        remoteBridge.registerSerializer(Integer.class, new IntegerSerializer());
+        try {
+            localBridge.connect("127.0.0.1", remoteBridge.listen(0));
+            SerialListener listener = new SerialListener(new CountDownLatch(100));
+            remoteBus.register(listener);
+            awaitRemoteSubscribers(localBridge, "test6", true);
+            assertFalse(localBridge.hasRemoteSubscribers("test8"));
+
+            for (int i = 0; i < 100; i++) {
+                localBus.post("test6", i, false);
+            }
+            assertTrue(listener.latch.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(Integer.valueOf(i), listener.received.get(i));
+            }
+
+            remoteBus.unregister(listener);
+            awaitRemoteSubscribers(localBridge, "test6", false);
+        } finally {
+            localBridge.close();
+            remoteBridge.close();
+        }
+    }
+
+    public void testBridgeDropsEventsForStalledPeer() throws Exception {
+        EventBusImpl localBus = new EventBusImpl(MoreExecutors.directExecutor());
+        EventBusBridge bridge = EventBusBridge.create(localBus, ImmutableSet.of("test6"), 16,
+                OverflowPolicy.DROP_NEWEST);
+        bridge.registerSerializer(Integer.class, new IntegerSerializer());
+        try (ServerSocket server = new ServerSocket(0)) {
+            bridge.connect("127.0.0.1", server.getLocalPort());
+            try (Socket peer = server.accept()) {
+                // subscribe to test6, then never read
+                byte[] subject = "test6".getBytes(StandardCharsets.UTF_8);
+                DataOutputStream out = new DataOutputStream(peer.getOutputStream());
+                out.writeInt(9 + subject.length);
+                out.writeByte(41);
+                out.writeInt(subject.length);
+                out.write(subject);
+                out.flush();
+                awaitRemoteSubscribers(bridge, "test6", true);
+
+                for (int i = 0; i < 200000 && bridge.getDroppedEventCount() == 0; i++) {
+                    localBus.post("test6", i, false);
+                }
+                assertTrue(bridge.getDroppedEventCount() > 0);
+                assertEquals(bridge.getDroppedEventCount(), localBus.getDroppedEventCount("test6"));
+            }
+        } finally {
+            bridge.close();
+        }
+    }
+
+    public void testWeakListenersPurgedAfterCollection() throws InterruptedException {
+        EventBusImpl weakBus = new EventBusImpl(MoreExecutors.directExecutor());
+        CountingListener kept = new CountingListener();
+        weakBus.registerWeakly(kept);
+        for (int i = 0; i < 100; i++) {
+            weakBus.registerWeakly(new CountingListener());
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (weakBus.getPurgedSubscriberCount() < 100) {
+            assertTrue("collected listeners not purged", System.nanoTime() < deadline);
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(100, weakBus.getPurgedSubscriberCount());
+        weakBus.post("test3", "after purge");
+        assertEquals(1, kept.count);
+        assertEquals(0, weakBus.getDeadEventCount("test3"));
+    }
+
+    public void testDiscardedBusWithWeakListenersCollected() throws InterruptedException {
+        CountingListener listener = new CountingListener();
+        EventBusImpl discardedBus = new EventBusImpl(MoreExecutors.directExecutor());
+        discardedBus.registerWeakly(listener);
+        WeakReference<EventBusImpl> busReference = new WeakReference<>(discardedBus);
+        discardedBus = null;
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (busReference.get() != null) {
+            assertTrue("discarded bus still reachable", System.nanoTime() < deadline);
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertEquals(0, listener.count);
+    }
+
+    public void testHasSubscribersFollowsWildcards() {
+        EventBusImpl wildcardBus = new EventBusImpl(MoreExecutors.directExecutor());
+        WildcardListener listener = new WildcardListener();
+        assertFalse(wildcardBus.hasSubscribers("robot.joint.1"));
+        wildcardBus.register(listener);
+        assertTrue(wildcardBus.hasSubscribers("robot.joint.1"));
+        assertTrue(wildcardBus.hasSubscribers("robot.arm"));
+        assertFalse(wildcardBus.hasSubscribers("camera"));
+        wildcardBus.unregister(listener);
+        assertFalse(wildcardBus.hasSubscribers("robot.joint.1"));
+    }
+
+    public void testRegisterAllAndUnregisterAll() {
+        EventBusImpl bulkBus = new EventBusImpl(MoreExecutors.directExecutor());
+        List<CountingListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            listeners.add(new CountingListener());
+        }
+        bulkBus.registerAll(listeners);
+        bulkBus.register(listeners.get(0));
+        assertTrue(bulkBus.hasSubscribers("test3"));
+        bulkBus.post("test3", "a");
+        for (CountingListener listener : listeners) {
+            assertEquals(1, listener.count);
+        }
+
+        List<CountingListener> withStranger = new ArrayList<>(listeners);
+        withStranger.add(new CountingListener());
+        try {
+            bulkBus.unregisterAll(withStranger);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        bulkBus.post("test3", "b");
+        assertEquals(2, listeners.get(49).count);
+
+        bulkBus.unregisterAll(listeners);
+        assertFalse(bulkBus.hasSubscribers("test3"));
+        bulkBus.post("test3", "c");
+        for (CountingListener listener : listeners) {
+            assertEquals(2, listener.count);
+        }
+        assertEquals(1, bulkBus.getDeadEventCount("test3"));
+    }
+
+    public void testAdaptiveDispatchPlacesSubscribersByCost() {
+        List<Runnable> tasks = new ArrayList<>();
+        EventBusImpl adaptiveBus = new EventBusImpl(tasks::add);
+        adaptiveBus.enableAdaptiveDispatch(1, 2, TimeUnit.MILLISECONDS);
+        CountingListener cheap = new CountingListener();
+        SlowListener slow = new SlowListener();
+        adaptiveBus.register(cheap);
+        adaptiveBus.register(slow);
+
+        // unmeasured subscribers follow the post's flag
+        adaptiveBus.post("test3", "a", false);
+        assertEquals(0, cheap.count);
+        tasks.remove(0).run();
+        assertEquals(1, cheap.count);
+        adaptiveBus.post("test9", "a", true);
+        assertEquals(1, slow.count);
+
+        adaptiveBus.post("test3", "b", false);
+        assertEquals(2, cheap.count);
+        adaptiveBus.post("test9", "b", true);
+        assertEquals(1, slow.count);
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(2, slow.count);
+
+        adaptiveBus.disableAdaptiveDispatch();
+        adaptiveBus.post("test3", "c", false);
+        assertEquals(2, cheap.count);
+        assertEquals(1, tasks.size());
+    }
+
+    private static void awaitRemoteSubscribers(EventBusBridge bridge, String subject, boolean expected)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bridge.hasRemoteSubscribers(subject) != expected) {
+            assertTrue("subscription of " + subject + " not propagated", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
     @Subject("test1")
     @ParSubscribe
     public void handleString(String message) throws InterruptedException {
@@ -62,6 +873,172 @@ public class EventBusTest extends TestCase {
         System.out.println("delete" + str);
     }
 
+    static class CountingListener {
+        private int count;
+
+        @Subject("test3")
+        @ParSubscribe
+        public void onMessage(CharSequence message) {
+            count++;
+        }
+    }
+
+    static class SlowListener {
+        private int count;
+
+        @Subject("test9")
+        @ParSubscribe
+        public void onMessage(String message) throws InterruptedException {
+            Thread.sleep(5);
+            count++;
+        }
+    }
+
+    public static class FailingListener {
+        @Subject("test4")
+        @ParSubscribe
+        public void onMessage(String message) throws Exception {
+            throw new Exception(message);
+        }
+    }
+
+    static class LatchListener {
+        private final CountDownLatch latch;
+
+        LatchListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Subject("test5")
+        @ParSubscribe
+        public void onMessage(Integer message) {
+            latch.countDown();
+        }
+    }
+
+    public static class ReplyingListener {
+        private final int offset;
+
+        ReplyingListener(int offset) {
+            this.offset = offset;
+        }
+
+        @Subject("test5")
+        @ParSubscribe
+        public int onRequest(Integer request) {
+            return request + offset;
+        }
+    }
+
+    static class PriorityListener {
+        private final List<String> received = new ArrayList<>();
+
+        @Subject("test7")
+        @ParSubscribe(priority = -10)
+        public void onBulk(String message) {
+            received.add("bulk");
+        }
+
+        @Subject("test7")
+        @ParSubscribe
+        public void onNormal(String message) {
+            received.add("normal");
+        }
+
+        @Subject("test7")
+        @ParSubscribe(priority = 10)
+        public void onCritical(String message) {
+            received.add("critical");
+        }
+    }
+
+    static class ShardedListener {
+        private final CountDownLatch latch;
+        private final List<List<Integer>> receivedByKey = Arrays.asList(
+                Collections.synchronizedList(new ArrayList<>()),
+                Collections.synchronizedList(new ArrayList<>()),
+                Collections.synchronizedList(new ArrayList<>()));
+
+        ShardedListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Subject("test8")
+        @ParSubscribe
+        public void onMessage(Integer message) {
+            receivedByKey.get(message % 3).add(message);
+            latch.countDown();
+        }
+    }
+
+    interface JointListener extends EventListener {
+        void onJointMoved();
+    }
+
+    interface AlarmListener extends EventListener {
+        void onAlarm();
+    }
+
+    static class DeadEventListener {
+        private final List<Object> received = new ArrayList<>();
+
+        @ParSubscribe
+        public void onDeadEvent(DeadEvent event) {
+            received.add(event.getEvent());
+        }
+    }
+
+    static class IntegerSerializer implements EventSerializer<Integer> {
+        @Override
+        public byte[] serialize(Integer event) {
+            return ByteBuffer.allocate(4).putInt(event).array();
+        }
+
+        @Override
+        public Integer deserialize(byte[] bytes) {
+            return ByteBuffer.wrap(bytes).getInt();
+        }
+    }
+
+    static class SerialListener {
+        private final CountDownLatch latch;
+        private final List<Integer> received = new ArrayList<>();
+        private final AtomicBoolean running = new AtomicBoolean();
+        private volatile boolean overlapped;
+
+        SerialListener(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Subject("test6")
+        @eventbus.Subscribe
+        public void onMessage(Integer message) {
+            if (!running.compareAndSet(false, true)) {
+                overlapped = true;
+            }
+            received.add(message);
+            running.set(false);
+            latch.countDown();
+        }
+    }
+
+    static class WildcardListener {
+        private final List<String> joints = new ArrayList<>();
+        private final List<String> robot = new ArrayList<>();
+
+        @Subject("robot.joint.*")
+        @ParSubscribe
+        public void onJoint(String message) {
+            joints.add(message);
+        }
+
+        @Subject("robot.#")
+        @ParSubscribe
+        public void onRobot(String message) {
+            robot.add(message);
+        }
+    }
+
     static class PullNewMessageEvent {
         private int count;
 